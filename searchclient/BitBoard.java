@@ -0,0 +1,173 @@
+package searchclient;
+
+// A set of cells of a level as a flattened bitset, one long per 64 cells. Rows are stored cols + 1 bits apart; the spare
+// bit at the end of every row is never set, so shifting by one bit moves cells sideways without wrapping into the next
+// row, and shifting by a whole row moves them up or down. That makes flood fill a handful of word operations per step
+// over the whole board instead of a queue of cells.
+public final class BitBoard {
+	public final int rows;
+	public final int cols;
+	private final int stride;
+	private final long[] bits;
+
+	public BitBoard(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.stride = cols + 1;
+		this.bits = new long[(rows * this.stride + 63) >>> 6];
+	}
+
+	private BitBoard(BitBoard other) {
+		this.rows = other.rows;
+		this.cols = other.cols;
+		this.stride = other.stride;
+		this.bits = other.bits.clone();
+	}
+
+	// The cells of grid holding anything.
+	public static BitBoard occupied(char[][] grid) {
+		BitBoard board = new BitBoard(grid.length, grid[0].length);
+		for (int row = 0; row < board.rows; row++) {
+			for (int col = 0; col < board.cols; col++) {
+				if (grid[row][col] > 0) {
+					board.set(row, col);
+				}
+			}
+		}
+		return board;
+	}
+
+	public BitBoard copy() {
+		return new BitBoard(this);
+	}
+
+	public boolean get(int row, int col) {
+		int bit = row * this.stride + col;
+		return (this.bits[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	public void set(int row, int col) {
+		int bit = row * this.stride + col;
+		this.bits[bit >>> 6] |= 1L << bit;
+	}
+
+	public void clear(int row, int col) {
+		int bit = row * this.stride + col;
+		this.bits[bit >>> 6] &= ~(1L << bit);
+	}
+
+	public void and(BitBoard other) {
+		for (int i = 0; i < this.bits.length; i++) {
+			this.bits[i] &= other.bits[i];
+		}
+	}
+
+	public void andNot(BitBoard other) {
+		for (int i = 0; i < this.bits.length; i++) {
+			this.bits[i] &= ~other.bits[i];
+		}
+	}
+
+	public void or(BitBoard other) {
+		for (int i = 0; i < this.bits.length; i++) {
+			this.bits[i] |= other.bits[i];
+		}
+	}
+
+	// Whether every cell of other is also in this board.
+	public boolean containsAll(BitBoard other) {
+		for (int i = 0; i < this.bits.length; i++) {
+			if ((other.bits[i] & ~this.bits[i]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean isEmpty() {
+		for (long word : this.bits) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int cardinality() {
+		int count = 0;
+		for (long word : this.bits) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	// The cells of this board connected to (row, col) through 4-neighbourhood; empty if (row, col) is not in the board.
+	// Sweeps alternate between ascending and descending word order and update in place, so a single sweep carries the
+	// fill along a whole corridor running with the sweep, and the loop ends after the first sweep without changes.
+	public BitBoard fill(int row, int col) {
+		BitBoard reached = new BitBoard(this.rows, this.cols);
+		if (!this.get(row, col)) {
+			return reached;
+		}
+		reached.set(row, col);
+		long[] r = reached.bits;
+		int n = r.length;
+		boolean changed = true;
+		boolean ascending = true;
+		while (changed) {
+			changed = false;
+			for (int k = 0; k < n; k++) {
+				int i = ascending ? k : n - 1 - k;
+				long word = r[i];
+				long grown = word | word << 1 | word >>> 1 | shiftedUp(r, i, this.stride) | shiftedDown(r, i, this.stride);
+				if (i > 0) {
+					grown |= r[i - 1] >>> 63;
+				}
+				if (i < n - 1) {
+					grown |= r[i + 1] << 63;
+				}
+				grown &= this.bits[i];
+				if (grown != word) {
+					r[i] = grown;
+					changed = true;
+				}
+			}
+			ascending = !ascending;
+		}
+		return reached;
+	}
+
+	// Word i of a shifted towards higher bit indices by s bits.
+	private static long shiftedUp(long[] a, int i, int s) {
+		int q = s >>> 6;
+		int r = s & 63;
+		long word = i - q >= 0 ? a[i - q] << r : 0;
+		if (r != 0 && i - q - 1 >= 0) {
+			word |= a[i - q - 1] >>> (64 - r);
+		}
+		return word;
+	}
+
+	// Word i of a shifted towards lower bit indices by s bits.
+	private static long shiftedDown(long[] a, int i, int s) {
+		int q = s >>> 6;
+		int r = s & 63;
+		long word = i + q < a.length ? a[i + q] >>> r : 0;
+		if (r != 0 && i + q + 1 < a.length) {
+			word |= a[i + q + 1] << (64 - r);
+		}
+		return word;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int row = 0; row < this.rows; row++) {
+			for (int col = 0; col < this.cols; col++) {
+				s.append(this.get(row, col) ? '#' : '.');
+			}
+			s.append("\n");
+		}
+		return s.toString();
+	}
+}
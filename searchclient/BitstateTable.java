@@ -0,0 +1,108 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// Explored set as a Bloom filter over a fixed bit array (bitstate hashing): a state is marked by setting k bits chosen
+// by double hashing of a 64-bit hash of the state, and counts as explored when all k bits are set. The memory does not
+// grow with the search, at the price of states that are wrongly taken to be explored (false positives). Those states
+// and everything only reachable through them are never expanded, so the search may miss solutions, never plan wrongly.
+public class BitstateTable {
+	public static final int DEFAULT_HASHES = 3;
+
+	private final long[] bits;
+	private final long mask;
+	private final int hashes;
+	private long bitsSet;
+	private int size;
+
+	// The bit array is the largest power of two not exceeding budgetBytes.
+	public BitstateTable(long budgetBytes, int hashes) {
+		long words = Long.highestOneBit(Math.max(budgetBytes / 8, 1));
+		words = Math.min(words, 1L << 30);
+		this.bits = new long[(int) words];
+		this.mask = words * 64 - 1;
+		this.hashes = hashes;
+	}
+
+	public BitstateTable(long budgetBytes) {
+		this(budgetBytes, DEFAULT_HASHES);
+	}
+
+	// States added so far that set at least one new bit, i.e. that were not already (wrongly) taken to be present.
+	public int size() {
+		return this.size;
+	}
+
+	public long bytes() {
+		return this.bits.length * 8L;
+	}
+
+	public boolean contains(Node n) {
+		long h1 = hash(n);
+		long h2 = mix(h1 ^ 0xC2B2AE3D27D4EB4FL) | 1;
+		for (int i = 0; i < this.hashes; i++) {
+			long bit = (h1 + i * h2) & this.mask;
+			if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void add(Node n) {
+		long h1 = hash(n);
+		long h2 = mix(h1 ^ 0xC2B2AE3D27D4EB4FL) | 1;
+		boolean added = false;
+		for (int i = 0; i < this.hashes; i++) {
+			long bit = (h1 + i * h2) & this.mask;
+			int word = (int) (bit >>> 6);
+			if ((this.bits[word] & (1L << bit)) == 0) {
+				this.bits[word] |= 1L << bit;
+				this.bitsSet++;
+				added = true;
+			}
+		}
+		if (added) {
+			this.size++;
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(this.bits, 0);
+		this.bitsSet = 0;
+		this.size = 0;
+	}
+
+	// Probability that a state never added is reported as present: every one of its k bits happens to be set already.
+	public double falsePositiveRate() {
+		return Math.pow((double) this.bitsSet / (this.mask + 1), this.hashes);
+	}
+
+	// Node.hashCode has only 32 bits, too few to address large bit arrays, so the state is hashed again in 64 bits.
+	private static long hash(Node n) {
+		long h = n.agentRow * 0x9E3779B97F4A7C15L + n.agentCol;
+		for (int row = 1; row < n.level.rows - 1; row++) {
+			char[] boxes = n.boxes[row];
+			for (int col = 1; col < n.level.cols - 1; col++) {
+				if (boxes[col] > 0) {
+					h = (h ^ ((row * n.level.cols + col) << 8 | boxes[col])) * 0x9E3779B97F4A7C15L;
+				}
+			}
+		}
+		return mix(h ^ n.level.hashCode());
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.2f MB bit array, %d hash functions", this.bytes() / (1024.0 * 1024.0), this.hashes);
+	}
+}
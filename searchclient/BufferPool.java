@@ -0,0 +1,57 @@
+package searchclient;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Direct buffers that are kept for reuse instead of being dropped. allocateDirect is slow and the memory behind a
+// direct buffer is only freed once its buffer object happens to be collected, which hurts a process solving one level
+// after another (SolverDaemon). A pool is not thread-safe; concurrent solves need a pool each.
+public class BufferPool {
+	private final List<ByteBuffer> free = new ArrayList<ByteBuffer>();
+	private final List<ByteBuffer> lent = new ArrayList<ByteBuffer>();
+
+	// A buffer with position 0 and limit size; its contents are whatever the previous user left in it.
+	public ByteBuffer take(int size) {
+		int best = -1;
+		for (int i = 0; i < this.free.size(); i++) {
+			int capacity = this.free.get(i).capacity();
+			if (capacity >= size && (best < 0 || capacity < this.free.get(best).capacity())) {
+				best = i;
+			}
+		}
+		ByteBuffer buffer = best < 0 ? ByteBuffer.allocateDirect(size) : this.free.remove(best);
+		buffer.clear();
+		buffer.limit(size);
+		this.lent.add(buffer);
+		return buffer;
+	}
+
+	// Hands back a single buffer before the end of the solve.
+	public void give(ByteBuffer buffer) {
+		// Buffers compare by content, so look them up by identity.
+		for (int i = 0; i < this.lent.size(); i++) {
+			if (this.lent.get(i) == buffer) {
+				this.free.add(this.lent.remove(i));
+				return;
+			}
+		}
+	}
+
+	// Takes back every buffer still lent out; whatever used them must be finished.
+	public void reclaim() {
+		this.free.addAll(this.lent);
+		this.lent.clear();
+	}
+
+	public long bytesPooled() {
+		long bytes = 0;
+		for (ByteBuffer buffer : this.free) {
+			bytes += buffer.capacity();
+		}
+		for (ByteBuffer buffer : this.lent) {
+			bytes += buffer.capacity();
+		}
+		return bytes;
+	}
+}
@@ -9,7 +9,7 @@ public class Command {
 	};
 
 	public static enum Type {
-		Move, Push, Pull
+		Move, Push, Pull, NoOp
 	};
 	
 	public static final Command[] EVERY;
@@ -34,12 +34,32 @@ public class Command {
 		}
 
 		EVERY = cmds.toArray(new Command[0]);
+		for (int i = 0; i < EVERY.length; i++) {
+			EVERY[i].ordinal = i;
+		}
 	}
 
+	// Only meaningful in joint actions, so it is not part of EVERY.
+	public static final Command NOOP = new Command(Type.NoOp, null, null);
+
 	public static boolean isOpposite(Dir d1, Dir d2) {
 		return d1.ordinal() + d2.ordinal() == 3;
 	}
 
+	public static Dir opposite(Dir d) {
+		return Dir.values()[3 - d.ordinal()];
+	}
+
+	// The instance in EVERY with the given type and directions, or null if there is none.
+	public static Command get(Type t, Dir d1, Dir d2) {
+		for (Command c : EVERY) {
+			if (c.actionType == t && c.dir1 == d1 && c.dir2 == d2) {
+				return c;
+			}
+		}
+		return null;
+	}
+
 	public static int dirToRowChange(Dir d) {
 		// South is down one row (1), north is up one row (-1).
 		switch (d) {
@@ -68,6 +88,8 @@ public class Command {
 	public final Dir dir1;
 	public final Dir dir2;
 
+	private int ordinal = -1;
+
 	public Command(Dir d) {
 		this.actionType = Type.Move;
 		this.dir1 = d;
@@ -80,11 +102,23 @@ public class Command {
 		this.dir2 = d2;
 	}
 
+	// Index of this command in EVERY.
+	public int ordinal() {
+		return this.ordinal;
+	}
+
+	// The action without brackets, as it appears inside a joint action.
+	public String actionName() {
+		if (this.actionType == Type.NoOp)
+			return this.actionType.toString();
+		else if (this.actionType == Type.Move)
+			return String.format("%s(%s)", this.actionType.toString(), this.dir1.toString());
+		else
+			return String.format("%s(%s,%s)", this.actionType.toString(), this.dir1.toString(), this.dir2.toString());
+	}
+
 	@Override
 	public String toString() {
-		if (this.actionType == Type.Move)
-			return String.format("[%s(%s)]", this.actionType.toString(), this.dir1.toString());
-		else
-			return String.format("[%s(%s,%s)]", this.actionType.toString(), this.dir1.toString(), this.dir2.toString());
+		return "[" + this.actionName() + "]";
 	}
 }
@@ -0,0 +1,75 @@
+package searchclient;
+
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Thin stand-in for SearchClient to be started by the server: it forwards its arguments and the server's messages to a
+// running SolverDaemon and copies the daemon's actions back. Only a handful of classes are loaded, so it starts much
+// faster than a full client. Without a daemon it solves the level in-process like SearchClient would.
+public class DaemonClient {
+	public static void main(String[] args) throws Exception {
+		Path path = SolverDaemon.defaultSocket();
+		int first = 0;
+		if (args.length >= 2 && args[0].equals("-socket")) {
+			path = Paths.get(args[1]);
+			first = 2;
+		}
+		String[] clientArgs = new String[args.length - first];
+		System.arraycopy(args, first, clientArgs, 0, clientArgs.length);
+
+		final SocketChannel channel;
+		try {
+			channel = SocketChannel.open(UnixDomainSocketAddress.of(path));
+		} catch (IOException ex) {
+			System.err.format("No solver daemon at %s, solving in-process.\n", path);
+			SearchClient.main(clientArgs);
+			return;
+		}
+		System.err.format("Solving with the daemon at %s.\n", path);
+
+		byte[] header = (String.join("\t", clientArgs) + "\n").getBytes(StandardCharsets.UTF_8);
+		write(channel, ByteBuffer.wrap(header));
+
+		Thread upstream = new Thread() {
+			@Override
+			public void run() {
+				// No half-close at the end of stdin: the daemon takes end of input to mean that the client is gone.
+				byte[] bytes = new byte[8192];
+				try {
+					int read;
+					while ((read = System.in.read(bytes)) >= 0) {
+						write(channel, ByteBuffer.wrap(bytes, 0, read));
+					}
+				} catch (IOException ex) {
+					// The daemon closed the connection; the downstream loop ends as well.
+				}
+			}
+		};
+		// The server keeps stdin open after the last action, so this thread must not keep the JVM alive.
+		upstream.setDaemon(true);
+		upstream.start();
+
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		try {
+			while (channel.read(buffer) >= 0) {
+				System.out.write(buffer.array(), 0, buffer.position());
+				System.out.flush();
+				buffer.clear();
+			}
+		} catch (IOException ex) {
+			// A reset after the daemon closed its end; everything it sent has been copied already.
+		}
+		channel.close();
+	}
+
+	private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package searchclient;
+
+import searchclient.Command.Dir;
+
+// Proves single-agent levels unsolvable before any search is started.
+//
+// Sokoban's dead squares and freeze deadlocks do not carry over to this domain: every action can be undone (a push by
+// pulling the box back, a pull by pushing it back, a move by moving back), so every state the search reaches can reach
+// the initial state again. A state is therefore dead exactly when the initial state is, and a detector run on every
+// child would never prune anything on a solvable level. On an unsolvable level it is the initial state that has to be
+// recognized, or the search exhausts the whole state space before giving up; so the rules below are checked once, for
+// the initial state.
+//
+// The agent never leaves the part of the level it starts in, and no box moves without the agent next to it. A box only
+// stays put for good if, from every free neighbour, the agent can neither push it (the cell behind it is blocked) nor
+// pull it (the agent has nowhere to step back to); note that boxes in corners, against walls or in 2x2 blocks can all
+// be pulled out. Boxes that block each other this way are found as a greatest fixpoint: all boxes start out frozen, and
+// boxes that could move if the frozen ones stayed where they are are taken out until none is left to take out. A
+// level is dead when a frozen box covers a goal of another letter, or when some part of the level has fewer boxes of a
+// letter that can still move than it has goals of that letter left to fill.
+public class DeadlockDetector {
+	private final Level level;
+	// Part of the level (cells connected around walls) of every cell, -1 for walls.
+	private final int[][] part;
+	private final int parts;
+
+	public DeadlockDetector(Level level) {
+		this.level = level;
+		this.part = new int[level.rows][level.cols];
+		int parts = 0;
+		BitBoard unassigned = level.floor.copy();
+		for (int row = 0; row < level.rows; row++) {
+			for (int col = 0; col < level.cols; col++) {
+				this.part[row][col] = -1;
+			}
+		}
+		for (int row = 0; row < level.rows; row++) {
+			for (int col = 0; col < level.cols; col++) {
+				if (!unassigned.get(row, col)) {
+					continue;
+				}
+				BitBoard cells = unassigned.fill(row, col);
+				unassigned.andNot(cells);
+				for (int r = 0; r < level.rows; r++) {
+					for (int c = 0; c < level.cols; c++) {
+						if (cells.get(r, c)) {
+							this.part[r][c] = parts;
+						}
+					}
+				}
+				parts++;
+			}
+		}
+		this.parts = parts;
+	}
+
+	// Why the goals can never be reached from n, or null if no reason was found.
+	public String deadlock(Node n) {
+		boolean[][] frozen = this.freeze(n);
+		// Per part and letter: goals still to fill, and boxes that can still move.
+		int[][] needed = new int[this.parts][26];
+		int[][] available = new int[this.parts][26];
+		for (int row = 0; row < this.level.rows; row++) {
+			for (int col = 0; col < this.level.cols; col++) {
+				int p = this.part[row][col];
+				char goal = this.level.goals[row][col];
+				char box = Character.toLowerCase(n.boxes[row][col]);
+				if (frozen[row][col]) {
+					if (goal != 0 && goal != box) {
+						return String.format("The %c box at (%d, %d) can never move off the %c goal it covers.", n.boxes[row][col], row, col, goal);
+					}
+				} else if (box != 0) {
+					available[p][box - 'a']++;
+				}
+				if (goal != 0 && !(frozen[row][col] && goal == box)) {
+					needed[p][goal - 'a']++;
+				}
+			}
+		}
+		for (int p = 0; p < this.parts; p++) {
+			for (int letter = 0; letter < 26; letter++) {
+				if (needed[p][letter] > available[p][letter]) {
+					return String.format("%d %c goal(s) to fill with %d movable %c box(es) that can get there.", needed[p][letter], (char) ('a' + letter), available[p][letter], (char) ('A' + letter));
+				}
+			}
+		}
+		return null;
+	}
+
+	// The boxes that can never move.
+	private boolean[][] freeze(Node n) {
+		int agentPart = this.part[n.agentRow][n.agentCol];
+		boolean[][] frozen = new boolean[this.level.rows][this.level.cols];
+		for (int row = 0; row < this.level.rows; row++) {
+			for (int col = 0; col < this.level.cols; col++) {
+				frozen[row][col] = n.boxes[row][col] != 0;
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int row = 0; row < this.level.rows; row++) {
+				for (int col = 0; col < this.level.cols; col++) {
+					if (frozen[row][col] && this.part[row][col] == agentPart && this.movable(row, col, frozen)) {
+						frozen[row][col] = false;
+						changed = true;
+					}
+				}
+			}
+		}
+		return frozen;
+	}
+
+	// Whether the box can be pushed or pulled when only walls and frozen boxes are in the way.
+	private boolean movable(int row, int col, boolean[][] frozen) {
+		for (Dir d : Dir.values()) {
+			int dr = Command.dirToRowChange(d);
+			int dc = Command.dirToColChange(d);
+			// The agent would stand on the neighbour in direction d.
+			int agentRow = row + dr;
+			int agentCol = col + dc;
+			if (!this.open(agentRow, agentCol, frozen)) {
+				continue;
+			}
+			// Push away from the agent.
+			if (this.open(row - dr, col - dc, frozen)) {
+				return true;
+			}
+			// Pull: the agent steps to any other open neighbour and the box follows.
+			for (Dir e : Dir.values()) {
+				int r = agentRow + Command.dirToRowChange(e);
+				int c = agentCol + Command.dirToColChange(e);
+				if ((r != row || c != col) && this.open(r, c, frozen)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean open(int row, int col, boolean[][] frozen) {
+		return row >= 0 && col >= 0 && row < this.level.rows && col < this.level.cols && !this.level.walls[row][col] && !frozen[row][col];
+	}
+}
@@ -0,0 +1,144 @@
+package searchclient;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+// Solves a level one goal at a time. Every stage searches from the end state of the previous stage, with only the goals
+// completed so far plus the next one in the goal grid, so earlier goals must still hold when the stage ends.
+public class DecompositionPlanner {
+	// Told about every stage as soon as it is solved, e.g. to start executing it while later stages are planned.
+	public static interface StageListener {
+		void solved(Node stageState, List<Node> segment);
+	}
+
+	private final Strategy.Factory factory;
+	private StageListener listener;
+
+	public DecompositionPlanner(Strategy.Factory factory) {
+		this.factory = factory;
+	}
+
+	public void setStageListener(StageListener listener) {
+		this.listener = listener;
+	}
+
+	// Orders goals so that filling one never cuts the agent off from the remaining goals and boxes.
+	// Goals deep inside dead ends are filled first, since filling the entrance first would seal them off.
+	public List<Point> goalOrder(Node initialState) {
+		Level level = initialState.level;
+		List<Point> remaining = new ArrayList<Point>();
+		for (int row = 0; row < level.rows; row++) {
+			for (int col = 0; col < level.cols; col++) {
+				if (level.goals[row][col] > 0) {
+					remaining.add(new Point(row, col));
+				}
+			}
+		}
+
+		// Cells that are neither walls nor filled goals.
+		BitBoard open = level.floor.copy();
+
+		List<Point> order = new ArrayList<Point>();
+		while (!remaining.isEmpty()) {
+			Point next = null;
+			int nextEnclosure = -1;
+			boolean nextSafe = false;
+			for (Point goal : remaining) {
+				open.clear(goal.x, goal.y);
+				boolean safe = this.isConnected(initialState, open, remaining);
+				open.set(goal.x, goal.y);
+
+				int enclosure = this.countBlockedNeighbours(open, goal);
+				if ((safe && !nextSafe) || (safe == nextSafe && enclosure > nextEnclosure)) {
+					next = goal;
+					nextEnclosure = enclosure;
+					nextSafe = safe;
+				}
+			}
+			order.add(next);
+			remaining.remove(next);
+			open.clear(next.x, next.y);
+		}
+		return order;
+	}
+
+	public SearchResult solve(Node initialState, SearchContext context) throws IOException {
+		List<Point> order = this.goalOrder(initialState);
+		System.err.format("Decomposing level into %d goal stages.\n", order.size());
+
+		Level level = initialState.level;
+		char[][] goals = new char[level.rows][level.cols];
+		Node state = initialState;
+		LinkedList<Node> plan = new LinkedList<Node>();
+		SearchResult result = null;
+		for (Point goal : order) {
+			goals = copy(goals);
+			goals[goal.x][goal.y] = level.goals[goal.x][goal.y];
+			Node stageState = state.withLevel(level.withGoals(goals));
+
+			// Every stage has its own goals and so its own pattern database; it is dropped once the stage is solved.
+			Strategy strategy = this.factory.create(stageState);
+			try {
+				result = new SearchClient(stageState).Search(strategy, context);
+			} finally {
+				strategy.release();
+			}
+			if (!result.isSolved()) {
+				return new SearchResult(result.status, null, result.best, result.bestH, result.stats);
+			}
+			plan.addAll(result.plan);
+			if (this.listener != null) {
+				this.listener.solved(stageState, result.plan);
+			}
+			if (!result.plan.isEmpty()) {
+				state = result.plan.getLast();
+			}
+		}
+		String stats = result == null ? "" : result.stats;
+		return new SearchResult(SearchResult.Status.SOLVED, plan, state, 0, stats);
+	}
+
+	private boolean isConnected(Node initialState, BitBoard open, List<Point> remaining) {
+		Level level = initialState.level;
+		// Cells that have to stay mutually reachable: the agent, unfilled goals and boxes not yet resting on a filled goal.
+		BitBoard required = BitBoard.occupied(initialState.boxes);
+		for (Point goal : remaining) {
+			required.set(goal.x, goal.y);
+		}
+		required.set(initialState.agentRow, initialState.agentCol);
+		required.and(open);
+		if (required.isEmpty()) {
+			return true;
+		}
+
+		for (int row = 0; row < level.rows; row++) {
+			for (int col = 0; col < level.cols; col++) {
+				if (required.get(row, col)) {
+					return open.fill(row, col).containsAll(required);
+				}
+			}
+		}
+		return true;
+	}
+
+	private int countBlockedNeighbours(BitBoard open, Point p) {
+		int count = 0;
+		for (Command.Dir d : Command.Dir.values()) {
+			if (!open.get(p.x + Command.dirToRowChange(d), p.y + Command.dirToColChange(d))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static char[][] copy(char[][] grid) {
+		char[][] copy = new char[grid.length][];
+		for (int row = 0; row < grid.length; row++) {
+			copy[row] = grid[row].clone();
+		}
+		return copy;
+	}
+}
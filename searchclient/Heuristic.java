@@ -11,29 +11,108 @@ import java.util.*;
 import searchclient.NotImplementedException;
 
 public abstract class Heuristic implements Comparator<Node> {
+	// Box-dependent terms are shared by every state with the same box layout, i.e. by all Move children of a node.
+	private static final int CACHE_SIZE = 1 << 16;
+
 	private final HashMap<Character,Set<Point>> goals;
+	private final LinkedHashMap<BoxLayout, BoxTerms> cache;
+	// Whether h is h_1: boxes matched to goals plus the agent's walking distance to the nearest of them.
+	public boolean agentTerm = false;
 
 	public Heuristic(Node initialState) {
 		// Here's a chance to pre-process the static parts of the level.
 		// Map all goals to their corresponding characters
 		HashMap<Character,Set<Point>> goals = new HashMap<Character,Set<Point>>();
-		for (int row = 0; row < initialState.MAX_ROW; row++) {
-			for (int col = 0; col < initialState.MAX_COL; col++) {
-				if (initialState.goals[row][col] > 0) {
-					if (goals.containsKey(initialState.goals[row][col])) {
-						goals.get(initialState.goals[row][col]).add(new Point(row,col));
+		for (int row = 0; row < initialState.level.rows; row++) {
+			for (int col = 0; col < initialState.level.cols; col++) {
+				if (initialState.level.goals[row][col] > 0) {
+					if (goals.containsKey(initialState.level.goals[row][col])) {
+						goals.get(initialState.level.goals[row][col]).add(new Point(row,col));
 					} else {
 						Set<Point> points = new HashSet<Point>();
 						points.add(new Point(row,col));
-						goals.put(initialState.goals[row][col],points);
+						goals.put(initialState.level.goals[row][col],points);
 					}
 				}
 			}
 		}
 		this.goals = goals;
+		this.cache = new LinkedHashMap<BoxLayout, BoxTerms>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BoxLayout, BoxTerms> eldest) {
+				return this.size() > CACHE_SIZE;
+			}
+		};
+	}
+
+	// The boxes of a node packed as (row * cols + col) << 8 | letter, like NodeStore packs them. The cache holds these
+	// copies rather than the node's grid, so it does not keep whole grids alive for nodes that are long gone.
+	private static class BoxLayout {
+		private final int[] boxes;
+		private final int hash;
+
+		BoxLayout(Node n) {
+			int[] boxes = new int[8];
+			int count = 0;
+			int cols = n.level.cols;
+			for (int row = 1; row < n.level.rows - 1; row++) {
+				for (int col = 1; col < cols - 1; col++) {
+					char b = n.boxes[row][col];
+					if (b > 0) {
+						if (count == boxes.length) {
+							boxes = Arrays.copyOf(boxes, count * 2);
+						}
+						boxes[count++] = (row * cols + col) << 8 | b;
+					}
+				}
+			}
+			this.boxes = Arrays.copyOf(boxes, count);
+			this.hash = n.boxHash();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			BoxLayout other = (BoxLayout) obj;
+			return this.hash == other.hash && Arrays.equals(this.boxes, other.boxes);
+		}
+	}
+
+	private static class BoxTerms {
+		int h = -1;
+		int h1 = -1;
+		// Boxes matched to unsatisfied goals by h_1; the agent distance term is measured to the closest of them.
+		Point[] h1Boxes;
+	}
+
+	private BoxTerms boxTerms(Node n) {
+		BoxLayout key = new BoxLayout(n);
+		BoxTerms terms = this.cache.get(key);
+		if (terms == null) {
+			terms = new BoxTerms();
+			this.cache.put(key, terms);
+		}
+		return terms;
 	}
 
 	public int h(Node n) {
+		if (this.agentTerm) {
+			return this.h_1(n);
+		}
+		BoxTerms terms = this.boxTerms(n);
+		if (terms.h < 0) {
+			terms.h = this.boxDistances(n);
+		}
+		return terms.h;
+	}
+
+	private int boxDistances(Node n) {
 		int h = 0;
 		HashMap<Character, Set<Point>> boxes = findBoxes(n);
 		HashMap<Point, HashMap<Point, Integer>> dists = findDistances(n, boxes);
@@ -47,7 +126,9 @@ public abstract class Heuristic implements Comparator<Node> {
 					minDist = goal.getValue();
 				}
 			}
-			h += minDist;
+			// Boxes without an unsatisfied goal of their letter don't contribute
+			if (closestGoal != null)
+				h += minDist;
 		}
 		
 		if (h == 0) return 0;
@@ -72,8 +153,8 @@ public abstract class Heuristic implements Comparator<Node> {
 				if (boxChar == n.boxes[goal.x][goal.y])
 					continue;
 
-				int shortestDistance = Integer.MAX_VALUE;
-				Point shortestBox = null;
+				if (!boxes.containsKey(boxChar))
+					continue;
 
 				for (Point box : boxes.get(boxChar)) {
 					int distance = Math.abs(goal.x-box.x) + Math.abs(goal.y-box.y);
@@ -86,10 +167,32 @@ public abstract class Heuristic implements Comparator<Node> {
 	} 
 
 	public int h_1(Node n) {
+		BoxTerms terms = this.boxTerms(n);
+		if (terms.h1 < 0) {
+			this.matchBoxes(n, terms);
+		}
+
+		if (terms.h1 == 0) {
+			return 0;
+		}
+
+		int agentDistance = RoomGraph.UNREACHABLE;
+		for (Point box : terms.h1Boxes) {
+			int distance = n.level.rooms().distance(n.agentRow, n.agentCol, box.x, box.y);
+			if (distance < agentDistance)
+				agentDistance = distance;
+		}
+		// Walls keep the agent from every box it still has to move. Like the pattern database, report a dead end that
+		// stays far from overflowing when weighted.
+		if (agentDistance == RoomGraph.UNREACHABLE)
+			return PatternDatabase.DEAD_END;
+		return terms.h1 + agentDistance;
+	}
+
+	private void matchBoxes(Node n, BoxTerms terms) {
 		int h = 0;
 		HashMap<Character, Set<Point>> boxes = findBoxes(n);
-
-		int agentDistance = Integer.MAX_VALUE;
+		List<Point> matched = new ArrayList<Point>();
 
 		for (Entry<Character,Set<Point>> goalEntry : goals.entrySet()) {
 			char boxChar = Character.toUpperCase(goalEntry.getKey());
@@ -104,6 +207,8 @@ public abstract class Heuristic implements Comparator<Node> {
 				// Box on goal
 				if (boxChar == n.boxes[goal.x][goal.y])
 					continue;
+				if (!boxes.containsKey(boxChar) || boxes.get(boxChar).isEmpty())
+					continue;
 				// Find the box closest to the goal
 				int shortestDistance = Integer.MAX_VALUE;
 				Point shortestBox = null;
@@ -115,35 +220,29 @@ public abstract class Heuristic implements Comparator<Node> {
 						shortestBox = box;
 					}
 				}
-				int distance = Math.abs(n.agentRow-shortestBox.x) + Math.abs(n.agentCol-shortestBox.y);
-				if (distance < agentDistance)
-					agentDistance = distance;
+				matched.add(shortestBox);
 				h += shortestDistance;
 				// Remove box to prevent goals from finding the same closest box
 				boxes.get(boxChar).remove(shortestBox);
 			}
 		}
 
-		if (h == 0) {
-			return h;
-		}
-
-		// return h;
-		return h + agentDistance;
+		terms.h1 = h;
+		terms.h1Boxes = matched.toArray(new Point[0]);
 	}
 
 	private HashMap<Character, Set<Point>> findBoxes(Node n)
 	{
 		// Map all boxes to their corresponding characters
 		HashMap<Character,Set<Point>> boxes = new HashMap<Character,Set<Point>>();
-		for (int row = 0; row < n.MAX_ROW; row++) {
-			for (int col = 0; col < n.MAX_COL; col++) {
+		for (int row = 0; row < n.level.rows; row++) {
+			for (int col = 0; col < n.level.cols; col++) {
 				char boxChar = n.boxes[row][col];
 				// No box in cell
 				if (boxChar == 0)
 					continue;
 				// Box on goal
-				if (boxChar == Character.toUpperCase(n.goals[row][col]))
+				if (boxChar == Character.toUpperCase(n.level.goals[row][col]))
 					continue;
 				// Add box' point to boxes
 				Point boxPoint = new Point(row,col);
@@ -161,9 +260,27 @@ public abstract class Heuristic implements Comparator<Node> {
 
 	public abstract int f(Node n);
 
+	// Hands back what the heuristic holds outside the heap once its search is over.
+	public void release() {
+	}
+
 	@Override
 	public int compare(Node n1, Node n2) {
-		return this.f(n1) - this.f(n2);
+		int f = this.f(n1) - this.f(n2);
+		return f != 0 ? f : this.tieBreak(n1, n2);
+	}
+
+	// Ties on f go to the node with fewer unsatisfied goals, which costs nothing to look up.
+	protected int tieBreak(Node n1, Node n2) {
+		return n1.unsatisfiedGoals() - n2.unsatisfiedGoals();
+	}
+
+	// When f includes g, a tie is first broken towards the deeper node, i.e. the one with the lower h.
+	protected int deeperFirst(Node n1, Node n2) {
+		if (n1.g() != n2.g()) {
+			return n2.g() - n1.g();
+		}
+		return n1.unsatisfiedGoals() - n2.unsatisfiedGoals();
 	}
 
 	public static class AStar extends Heuristic {
@@ -176,6 +293,11 @@ public abstract class Heuristic implements Comparator<Node> {
 			return n.g() + this.h(n);
 		}
 
+		@Override
+		protected int tieBreak(Node n1, Node n2) {
+			return this.deeperFirst(n1, n2);
+		}
+
 		@Override
 		public String toString() {
 			return "A* evaluation";
@@ -195,6 +317,11 @@ public abstract class Heuristic implements Comparator<Node> {
 			return n.g() + this.W * this.h(n);
 		}
 
+		@Override
+		protected int tieBreak(Node n1, Node n2) {
+			return this.deeperFirst(n1, n2);
+		}
+
 		@Override
 		public String toString() {
 			return String.format("WA*(%d) evaluation", this.W);
@@ -216,4 +343,52 @@ public abstract class Heuristic implements Comparator<Node> {
 			return "Greedy evaluation";
 		}
 	}
+
+	public static class PatternDatabaseHeuristic extends Heuristic {
+		private final PatternDatabase pdb;
+		private final PatternDatabase.Combination combination;
+		// f = g + W * h, or just h when W is 0.
+		private int W;
+
+		public PatternDatabaseHeuristic(Node initialState, PatternDatabase pdb, PatternDatabase.Combination combination, int W) {
+			super(initialState);
+			this.pdb = pdb;
+			this.combination = combination;
+			this.W = W;
+		}
+
+		// Under MAX the box distance sum of Heuristic.h is just one more admissible estimate to take the max with.
+		@Override
+		public int h(Node n) {
+			int h = this.pdb.lookup(n, this.combination);
+			if (this.combination == PatternDatabase.Combination.MAX) {
+				h = Math.max(h, super.h(n));
+			}
+			return h;
+		}
+
+		@Override
+		public void release() {
+			this.pdb.release();
+		}
+
+		@Override
+		public int f(Node n) {
+			if (this.W == 0) {
+				return this.h(n);
+			}
+			return n.g() + this.W * this.h(n);
+		}
+
+		@Override
+		protected int tieBreak(Node n1, Node n2) {
+			return this.W == 0 ? super.tieBreak(n1, n2) : this.deeperFirst(n1, n2);
+		}
+
+		@Override
+		public String toString() {
+			String evaluation = this.W == 0 ? "Greedy" : this.W == 1 ? "A*" : String.format("WA*(%d)", this.W);
+			return String.format("PDB(%s) %s evaluation", this.combination.toString().toLowerCase(), evaluation);
+		}
+	}
 }
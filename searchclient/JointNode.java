@@ -0,0 +1,289 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import searchclient.Command.Type;
+
+// State of a multi-agent (or colored) level, expanded by operator decomposition: every expansion decides the action of
+// a single agent, and a joint action is complete once every agent has acted. Only complete states cost an action.
+//
+// The server checks joint actions against the state before the step, so an agent may neither enter a cell that was
+// occupied when the step started nor one that another agent entered earlier in the same step.
+public class JointNode extends Node {
+	private static final String DEFAULT_COLOR = "blue";
+
+	// Static description of the agents taking part in a search.
+	public static class Agents {
+		public final char[] ids;
+		public final String[] colors;
+		private final HashMap<Character, String> boxColors;
+
+		public Agents(char[] ids, String[] colors, HashMap<Character, String> boxColors) {
+			this.ids = ids;
+			this.colors = colors;
+			this.boxColors = boxColors;
+		}
+
+		public int count() {
+			return this.ids.length;
+		}
+
+		public String boxColor(char box) {
+			String color = this.boxColors.get(Character.toUpperCase(box));
+			return color == null ? DEFAULT_COLOR : color;
+		}
+
+		public boolean canMove(int agent, char box) {
+			return this.colors[agent].equals(this.boxColor(box));
+		}
+
+		// The agents with the given indices, in that order.
+		public Agents subset(int[] agents) {
+			char[] ids = new char[agents.length];
+			String[] colors = new String[agents.length];
+			for (int i = 0; i < agents.length; i++) {
+				ids[i] = this.ids[agents[i]];
+				colors[i] = this.colors[agents[i]];
+			}
+			return new Agents(ids, colors, this.boxColors);
+		}
+
+		public static String colorOrDefault(String color) {
+			return color == null ? DEFAULT_COLOR : color;
+		}
+	}
+
+	public final Agents agents;
+	public int[] agentRows;
+	public int[] agentCols;
+
+	// Agent deciding its action in this node; 0 for complete states.
+	public int nextAgent;
+	// Actions of agents before nextAgent in the current step; for complete states, the step that led here.
+	public Command[] jointAction;
+	private JointNode stepStart;
+
+	private int _jointHash = 0;
+
+	public JointNode(Level level, Agents agents) {
+		super(level);
+		this.agents = agents;
+		this.agentRows = new int[agents.count()];
+		this.agentCols = new int[agents.count()];
+		this.stepStart = this;
+	}
+
+	private JointNode(JointNode parent) {
+		super(parent, parent.nextAgent + 1 == parent.agents.count() ? parent.g() + 1 : parent.g());
+		this.agents = parent.agents;
+		this.boxes = parent.boxes;
+		this.inheritGoalCount(parent);
+		this.agentRows = parent.agentRows.clone();
+		this.agentCols = parent.agentCols.clone();
+		this.jointAction = parent.nextAgent == 0 ? new Command[parent.agents.count()] : parent.jointAction.clone();
+
+		this.nextAgent = (parent.nextAgent + 1) % parent.agents.count();
+		this.stepStart = this.nextAgent == 0 ? this : parent.stepStart;
+	}
+
+	// Only meaningful for complete states.
+	@Override
+	public JointNode withLevel(Level level) {
+		JointNode n = new JointNode(level, this.agents);
+		n.agentRows = this.agentRows.clone();
+		n.agentCols = this.agentCols.clone();
+		n.boxes = this.boxes;
+		n.updateAgentPosition();
+		return n;
+	}
+
+	// Mirrors the position of the agent to move into agentRow/agentCol, which is what the heuristics look at.
+	public void updateAgentPosition() {
+		this.agentRow = this.agentRows[this.nextAgent];
+		this.agentCol = this.agentCols[this.nextAgent];
+	}
+
+	@Override
+	public boolean isGoalState() {
+		return this.nextAgent == 0 && super.isGoalState();
+	}
+
+	@Override
+	public ArrayList<Node> getExpandedNodes() {
+		ArrayList<Node> expandedNodes = new ArrayList<Node>(Command.EVERY.length + 1);
+		JointNode n = this.apply(this.nextAgent, Command.NOOP);
+		expandedNodes.add(n);
+		for (Command c : Command.EVERY) {
+			n = this.apply(this.nextAgent, c);
+			if (n != null) {
+				expandedNodes.add(n);
+			}
+		}
+		return expandedNodes;
+	}
+
+	// The child where agent i performs c, or null if c is not applicable for agent i in this step.
+	public JointNode apply(int i, Command c) {
+		JointNode pre = this.stepStart;
+		int row = this.agentRows[i];
+		int col = this.agentCols[i];
+		JointNode n;
+
+		if (c.actionType == Type.NoOp) {
+			n = new JointNode(this);
+		} else {
+			int newAgentRow = row + Command.dirToRowChange(c.dir1);
+			int newAgentCol = col + Command.dirToColChange(c.dir1);
+
+			if (c.actionType == Type.Move) {
+				if (!this.cellIsFree(newAgentRow, newAgentCol) || !pre.cellIsFree(newAgentRow, newAgentCol)) {
+					return null;
+				}
+				n = new JointNode(this);
+			} else if (c.actionType == Type.Push) {
+				char box = this.boxes[newAgentRow][newAgentCol];
+				if (box == 0 || pre.boxes[newAgentRow][newAgentCol] != box || !this.agents.canMove(i, box)) {
+					return null;
+				}
+				int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
+				int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
+				if (!this.cellIsFree(newBoxRow, newBoxCol) || !pre.cellIsFree(newBoxRow, newBoxCol)) {
+					return null;
+				}
+				n = new JointNode(this);
+				n.boxes = this.copyBoxes();
+				n.moveBox(newAgentRow, newAgentCol, newBoxRow, newBoxCol);
+			} else {
+				if (!this.cellIsFree(newAgentRow, newAgentCol) || !pre.cellIsFree(newAgentRow, newAgentCol)) {
+					return null;
+				}
+				int boxRow = row + Command.dirToRowChange(c.dir2);
+				int boxCol = col + Command.dirToColChange(c.dir2);
+				char box = this.boxes[boxRow][boxCol];
+				if (box == 0 || pre.boxes[boxRow][boxCol] != box || !this.agents.canMove(i, box)) {
+					return null;
+				}
+				n = new JointNode(this);
+				n.boxes = this.copyBoxes();
+				n.moveBox(boxRow, boxCol, row, col);
+			}
+			n.agentRows[i] = newAgentRow;
+			n.agentCols[i] = newAgentCol;
+		}
+		n.action = c;
+		n.jointAction[i] = c;
+		n.updateAgentPosition();
+		return n;
+	}
+
+	@Override
+	protected boolean cellIsFree(int row, int col) {
+		if (!super.cellIsFree(row, col)) {
+			return false;
+		}
+		for (int i = 0; i < this.agentRows.length; i++) {
+			if (this.agentRows[i] == row && this.agentCols[i] == col) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private char[][] copyBoxes() {
+		char[][] copy = new char[this.level.rows][];
+		for (int row = 0; row < this.level.rows; row++) {
+			copy[row] = this.boxes[row].clone();
+		}
+		return copy;
+	}
+
+	@Override
+	public String actionString() {
+		StringBuilder s = new StringBuilder("[");
+		for (int i = 0; i < this.jointAction.length; i++) {
+			if (i > 0) {
+				s.append(",");
+			}
+			s.append(this.jointAction[i].actionName());
+		}
+		return s.append("]").toString();
+	}
+
+	// Only complete states are part of the plan; each carries the joint action of its step.
+	@Override
+	public LinkedList<Node> extractPlan() {
+		LinkedList<Node> plan = new LinkedList<Node>();
+		for (Node n = this; !n.isInitialState(); n = n.parent) {
+			if (((JointNode) n).nextAgent == 0) {
+				plan.addFirst(n);
+			}
+		}
+		return plan;
+	}
+
+	@Override
+	public int hashCode() {
+		if (this._jointHash == 0) {
+			final int prime = 31;
+			int result = this.boxHash();
+			result = prime * result + Arrays.hashCode(this.agentRows);
+			result = prime * result + Arrays.hashCode(this.agentCols);
+			result = prime * result + this.nextAgent;
+			if (this.nextAgent != 0) {
+				result = prime * result + this.stepStart.hashCode();
+			}
+			this._jointHash = result;
+		}
+		return this._jointHash;
+	}
+
+	// Intermediate states are only equal when they also started their step from the same complete state.
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || this.getClass() != obj.getClass())
+			return false;
+		JointNode other = (JointNode) obj;
+		if (this.nextAgent != other.nextAgent)
+			return false;
+		if (!Arrays.equals(this.agentRows, other.agentRows) || !Arrays.equals(this.agentCols, other.agentCols))
+			return false;
+		if (!Arrays.deepEquals(this.boxes, other.boxes))
+			return false;
+		if (this.nextAgent != 0 && !this.stepStart.equals(other.stepStart))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int row = 0; row < this.level.rows; row++) {
+			for (int col = 0; col < this.level.cols; col++) {
+				char agent = 0;
+				for (int i = 0; i < this.agentRows.length; i++) {
+					if (this.agentRows[i] == row && this.agentCols[i] == col) {
+						agent = this.agents.ids[i];
+					}
+				}
+				if (this.boxes[row][col] > 0) {
+					s.append(this.boxes[row][col]);
+				} else if (agent > 0) {
+					s.append(agent);
+				} else if (this.level.goals[row][col] > 0) {
+					s.append(this.level.goals[row][col]);
+				} else if (this.level.walls[row][col]) {
+					s.append("+");
+				} else {
+					s.append(" ");
+				}
+			}
+			s.append("\n");
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,104 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// The static part of a level: its dimensions, walls and goals, and tables derived from them. A Level is never modified
+// once built and every node refers to the Level it belongs to, so searches on different levels (or on the same level
+// with different goals) can run side by side in one process.
+public final class Level {
+	public final int rows;
+	public final int cols;
+
+	// Indexed like Node.boxes; the arrays must not be written to after construction.
+	public final boolean[][] walls;
+	public final char[][] goals;
+	// Every cell that is not a wall, as a bitset.
+	public final BitBoard floor;
+
+	public final Tunnels tunnels;
+	// Shared with every level derived from this one; see rooms().
+	private final RoomsHolder rooms;
+	// Whether nodes on this level expand tunnel and corridor macro moves.
+	public final boolean macros;
+	// Order of the children of a node; see SuccessorOrdering.
+	public final SuccessorOrdering ordering;
+
+	private final int hash;
+
+	public Level(boolean[][] walls, char[][] goals) {
+		this(walls, goals, new Tunnels(walls), new RoomsHolder(), floor(walls), false, new SuccessorOrdering.RandomOrdering(1));
+	}
+
+	private Level(boolean[][] walls, char[][] goals, Tunnels tunnels, RoomsHolder rooms, BitBoard floor, boolean macros, SuccessorOrdering ordering) {
+		this.rows = walls.length;
+		this.cols = walls[0].length;
+		this.walls = walls;
+		this.goals = goals;
+		this.floor = floor;
+		this.tunnels = tunnels;
+		this.rooms = rooms;
+		this.macros = macros;
+		this.hash = 31 * Arrays.deepHashCode(walls) + Arrays.deepHashCode(goals);
+		this.ordering = ordering.on(this);
+	}
+
+	// The same level with another goal grid, e.g. a subset of the goals.
+	public Level withGoals(char[][] goals) {
+		return new Level(this.walls, goals, this.tunnels, this.rooms, this.floor, this.macros, this.ordering);
+	}
+
+	public Level withMacros(boolean macros) {
+		return new Level(this.walls, this.goals, this.tunnels, this.rooms, this.floor, macros, this.ordering);
+	}
+
+	public Level withOrdering(SuccessorOrdering ordering) {
+		return new Level(this.walls, this.goals, this.tunnels, this.rooms, this.floor, this.macros, ordering);
+	}
+
+	// Walking distances ignoring boxes. The graph is built on first use, once for a level and all levels derived from
+	// it; after that no lock is taken.
+	public RoomGraph rooms() {
+		RoomGraph graph = this.rooms.graph;
+		if (graph == null) {
+			synchronized (this.rooms) {
+				graph = this.rooms.graph;
+				if (graph == null) {
+					graph = new RoomGraph(this.walls);
+					this.rooms.graph = graph;
+				}
+			}
+		}
+		return graph;
+	}
+
+	private static final class RoomsHolder {
+		volatile RoomGraph graph;
+	}
+
+	private static BitBoard floor(boolean[][] walls) {
+		BitBoard floor = new BitBoard(walls.length, walls[0].length);
+		for (int row = 0; row < walls.length; row++) {
+			for (int col = 0; col < walls[row].length; col++) {
+				if (!walls[row][col]) {
+					floor.set(row, col);
+				}
+			}
+		}
+		return floor;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || this.getClass() != obj.getClass())
+			return false;
+		Level other = (Level) obj;
+		return this.hash == other.hash && Arrays.deepEquals(this.walls, other.walls) && Arrays.deepEquals(this.goals, other.goals);
+	}
+}
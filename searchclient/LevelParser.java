@@ -0,0 +1,262 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+// Reads a level in the server's format: optional color lines ("red: 0, A, B"), then the rows of the map up to an empty
+// line or the end of the input. The bytes of all rows are collected in one flat array in a single pass and only copied
+// into the grids of Level and Node once the dimensions are known, so even very large levels are read without a boxed
+// value per cell.
+//
+// The parser takes bytes one at a time and never reads past the empty line that ends the level, so the server's
+// responses can be read from the same stream afterwards. Hand it a buffered stream.
+//
+// To time parsing on a batch of level files:
+//   $ java searchclient.LevelParser levels/*.lvl
+public class LevelParser {
+	public static class LevelParseException extends IOException {
+		private static final long serialVersionUID = 5307264395019875402L;
+
+		// 1-based; column 0 when the error concerns the whole line.
+		public final int line;
+		public final int column;
+
+		public LevelParseException(int line, int column, String message) {
+			super(String.format("Line %d, column %d: %s", line, column, message));
+			this.line = line;
+			this.column = column;
+		}
+	}
+
+	private final InputStream in;
+	// Bytes of the map rows so far; row r is cells[rowStart[r]] up to cells[rowStart[r + 1]].
+	private byte[] cells = new byte[1 << 12];
+	private int size;
+	private int[] rowStart = new int[1 << 6];
+	private int rows;
+	private int cols;
+	// Input line of the first map row.
+	private int firstRowLine;
+	private int line;
+
+	public LevelParser(InputStream in) {
+		this.in = in;
+	}
+
+	public static Node parse(Path file) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			return new LevelParser(in).parse();
+		}
+	}
+
+	// One line of text, without its terminator, or null at the end of the input. Reads no further than the line.
+	public static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b = in.read();
+		if (b < 0) {
+			return null;
+		}
+		while (b >= 0 && b != '\n') {
+			line.append((char) b);
+			b = in.read();
+		}
+		int last = line.length() - 1;
+		if (last >= 0 && line.charAt(last) == '\r') {
+			line.setLength(last);
+		}
+		return line.toString();
+	}
+
+	public Node parse() throws IOException {
+		HashMap<Character, String> colors = new HashMap<Character, String>();
+		while (true) {
+			int start = this.size;
+			boolean ended = !this.readLine(start);
+			this.line++;
+			if (this.size == start) {
+				break;
+			}
+			if (this.rows == 0 && this.isColorLine(start)) {
+				this.parseColors(start, colors);
+				this.size = start;
+			} else {
+				if (this.rows == 0) {
+					this.firstRowLine = this.line;
+				}
+				if (this.rows + 1 == this.rowStart.length) {
+					this.rowStart = Arrays.copyOf(this.rowStart, this.rowStart.length * 2);
+				}
+				this.rowStart[this.rows++] = start;
+				this.rowStart[this.rows] = this.size;
+				this.cols = Math.max(this.cols, this.size - start);
+			}
+			if (ended) {
+				break;
+			}
+		}
+		if (this.rows == 0) {
+			throw new LevelParseException(this.line, 0, "The level has no map.");
+		}
+		return this.build(colors);
+	}
+
+	// Appends the bytes of the next line to cells and returns false if the input ended instead of a line terminator.
+	private boolean readLine(int start) throws IOException {
+		int b;
+		while ((b = this.in.read()) >= 0 && b != '\n') {
+			if (this.size == this.cells.length) {
+				this.cells = Arrays.copyOf(this.cells, this.cells.length * 2);
+			}
+			this.cells[this.size++] = (byte) b;
+		}
+		if (this.size > start && this.cells[this.size - 1] == '\r') {
+			this.size--;
+		}
+		return b >= 0;
+	}
+
+	// A color line starts with a color name followed by a colon; neither can start a map row.
+	private boolean isColorLine(int start) {
+		int i = start;
+		while (i < this.size && this.cells[i] >= 'a' && this.cells[i] <= 'z') {
+			i++;
+		}
+		return i > start && i < this.size && this.cells[i] == ':';
+	}
+
+	private void parseColors(int start, HashMap<Character, String> colors) throws LevelParseException {
+		int i = start;
+		while (this.cells[i] != ':') {
+			i++;
+		}
+		String color = new String(this.cells, start, i - start, StandardCharsets.US_ASCII);
+		i++;
+		boolean expectId = true;
+		for (; i < this.size; i++) {
+			byte b = this.cells[i];
+			if (b == ' ' || b == '\t') {
+				continue;
+			}
+			if (expectId && (b >= '0' && b <= '9' || b >= 'A' && b <= 'Z')) {
+				colors.put((char) b, color);
+				expectId = false;
+			} else if (!expectId && b == ',') {
+				expectId = true;
+			} else {
+				throw new LevelParseException(this.line, i - start + 1, expectId ? "Expected an agent or box, read " + describe(b) + "." : "Expected a comma, read " + describe(b) + ".");
+			}
+		}
+		if (expectId) {
+			throw new LevelParseException(this.line, this.size - start + 1, "Expected an agent or box at the end of the color line.");
+		}
+	}
+
+	private static String describe(byte b) {
+		return b >= 0x20 && b < 0x7F ? "'" + (char) b + "'" : "byte " + (b & 0xFF);
+	}
+
+	private Node build(HashMap<Character, String> colors) throws LevelParseException {
+		boolean[][] walls = new boolean[this.rows][this.cols];
+		char[][] boxes = new char[this.rows][this.cols];
+		char[][] goals = new char[this.rows][this.cols];
+		// Agent positions indexed by agent number, -1 when absent.
+		int[] agentRows = new int[10];
+		int[] agentCols = new int[10];
+		Arrays.fill(agentRows, -1);
+		int agentCount = 0;
+
+		for (int row = 0; row < this.rows; row++) {
+			int start = this.rowStart[row];
+			int end = this.rowStart[row + 1];
+			boolean[] wallsRow = walls[row];
+			char[] boxesRow = boxes[row];
+			char[] goalsRow = goals[row];
+			for (int i = start; i < end; i++) {
+				byte chr = this.cells[i];
+				int col = i - start;
+				if (chr == '+') { // Wall.
+					wallsRow[col] = true;
+				} else if ('0' <= chr && chr <= '9') { // Agent.
+					if (agentRows[chr - '0'] >= 0) {
+						throw new LevelParseException(this.firstRowLine + row, col + 1, "Agent " + (char) chr + " appears twice.");
+					}
+					agentRows[chr - '0'] = row;
+					agentCols[chr - '0'] = col;
+					agentCount++;
+				} else if ('A' <= chr && chr <= 'Z') { // Box.
+					boxesRow[col] = (char) chr;
+				} else if ('a' <= chr && chr <= 'z') { // Goal.
+					goalsRow[col] = (char) chr;
+				} else if (chr != ' ') { // Free space.
+					throw new LevelParseException(this.firstRowLine + row, col + 1, "Invalid level character " + describe(chr) + ".");
+				}
+			}
+		}
+		if (agentCount == 0) {
+			throw new LevelParseException(this.firstRowLine, 0, "The level has no agent.");
+		}
+
+		Level level = new Level(walls, goals);
+		Node initialState;
+		if (agentCount == 1 && colors.isEmpty()) {
+			initialState = new Node(level);
+			for (int i = 0; i < 10; i++) {
+				if (agentRows[i] >= 0) {
+					initialState.agentRow = agentRows[i];
+					initialState.agentCol = agentCols[i];
+				}
+			}
+		} else {
+			// Colored and multi-agent levels are searched with operator decomposition over all agents.
+			char[] ids = new char[agentCount];
+			String[] agentColors = new String[agentCount];
+			HashMap<Character, String> boxColors = new HashMap<Character, String>();
+			for (Entry<Character, String> entry : colors.entrySet()) {
+				if ('A' <= entry.getKey() && entry.getKey() <= 'Z') {
+					boxColors.put(entry.getKey(), entry.getValue());
+				}
+			}
+			int agent = 0;
+			for (int i = 0; i < 10; i++) {
+				if (agentRows[i] >= 0) {
+					ids[agent] = (char) ('0' + i);
+					agentColors[agent] = JointNode.Agents.colorOrDefault(colors.get(ids[agent]));
+					agent++;
+				}
+			}
+			JointNode state = new JointNode(level, new JointNode.Agents(ids, agentColors, boxColors));
+			agent = 0;
+			for (int i = 0; i < 10; i++) {
+				if (agentRows[i] >= 0) {
+					state.agentRows[agent] = agentRows[i];
+					state.agentCols[agent] = agentCols[i];
+					agent++;
+				}
+			}
+			state.updateAgentPosition();
+			initialState = state;
+		}
+		initialState.boxes = boxes;
+		return initialState;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java searchclient.LevelParser <level file>...");
+			System.exit(1);
+		}
+		for (String name : args) {
+			long start = System.nanoTime();
+			Node n = parse(Paths.get(name));
+			System.out.format("%s: %d x %d, %.2f ms\n", name, n.level.rows, n.level.cols, (System.nanoTime() - start) / 1e6);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package searchclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+// Independence detection: every group of agents is planned on its own, ignoring the agents of other groups and the
+// goals they are responsible for. The group plans are then executed together; when two groups get in each other's way
+// they are merged and planned jointly. In the worst case all agents end up in a single operator decomposition search.
+public class MultiAgentPlanner {
+	private final Strategy.Factory factory;
+
+	public MultiAgentPlanner(Strategy.Factory factory) {
+		this.factory = factory;
+	}
+
+	public SearchResult solve(JointNode initialState, SearchContext context) throws IOException {
+		int count = initialState.agents.count();
+		List<int[]> groups = new ArrayList<int[]>();
+		for (int i = 0; i < count; i++) {
+			groups.add(new int[] { i });
+		}
+		List<List<Command[]>> plans = new ArrayList<List<Command[]>>();
+		for (int i = 0; i < count; i++) {
+			plans.add(null);
+		}
+
+		SearchResult result = null;
+		while (true) {
+			for (int g = 0; g < groups.size(); g++) {
+				if (plans.get(g) != null) {
+					continue;
+				}
+				int[] group = groups.get(g);
+				System.err.format("Planning agent group %s.\n", this.describe(initialState, group));
+				JointNode groupState = this.groupState(initialState, group);
+				result = new SearchClient(groupState).Search(this.factory.create(groupState), context);
+				if (result.isSolved()) {
+					List<Command[]> steps = new ArrayList<Command[]>();
+					for (Node n : result.plan) {
+						steps.add(((JointNode) n).jointAction);
+					}
+					plans.set(g, steps);
+				} else if (groups.size() == 1 || context.shouldStop()) {
+					return result;
+				} else {
+					// The group cannot manage on its own, e.g. because a box it cannot move is in the way.
+					this.merge(groups, plans, g, this.nearestGroup(initialState, groups, group[0]));
+					g = -1;
+				}
+			}
+
+			int[] conflict = new int[2];
+			LinkedList<Node> plan = this.execute(initialState, groups, plans, conflict);
+			if (plan != null) {
+				Node end = plan.isEmpty() ? initialState : plan.getLast();
+				if (end.isGoalState()) {
+					return new SearchResult(SearchResult.Status.SOLVED, plan, end, 0, result == null ? "" : result.stats);
+				}
+				if (groups.size() == 1) {
+					return new SearchResult(SearchResult.Status.UNSOLVABLE, null, null, 0, result == null ? "" : result.stats);
+				}
+				// Goals nobody was responsible for remain; only a joint search of everyone can tell.
+				while (groups.size() > 1) {
+					this.merge(groups, plans, 0, 1);
+				}
+			} else {
+				int agent = conflict[0];
+				int other = conflict[1] >= 0 ? this.groupOf(groups, conflict[1]) : this.nearestGroup(initialState, groups, agent);
+				System.err.format("Agent %c is blocked by %s, merging their groups.\n", initialState.agents.ids[agent], conflict[1] >= 0 ? "agent " + initialState.agents.ids[conflict[1]] : "another group");
+				this.merge(groups, plans, this.groupOf(groups, agent), other);
+			}
+		}
+	}
+
+	// The level as seen by one group: other agents are left out and only goals of the group's colors remain.
+	private JointNode groupState(JointNode initialState, int[] group) {
+		Level level = initialState.level;
+		JointNode.Agents agents = initialState.agents.subset(group);
+		char[][] goals = new char[level.rows][level.cols];
+		for (int row = 0; row < level.rows; row++) {
+			for (int col = 0; col < level.cols; col++) {
+				char goal = level.goals[row][col];
+				if (goal > 0 && Arrays.asList(agents.colors).contains(agents.boxColor(goal))) {
+					goals[row][col] = goal;
+				}
+			}
+		}
+		JointNode n = new JointNode(level.withGoals(goals), agents);
+		for (int i = 0; i < group.length; i++) {
+			n.agentRows[i] = initialState.agentRows[group[i]];
+			n.agentCols[i] = initialState.agentCols[group[i]];
+		}
+		n.updateAgentPosition();
+		n.boxes = initialState.boxes;
+		return n;
+	}
+
+	// Executes all group plans side by side, padding finished agents with NoOp. Returns the complete states, or null
+	// with the agent whose action could not be applied in conflict[0] and the agent of another group in its way in
+	// conflict[1] (-1 if none could be pinned down).
+	private LinkedList<Node> execute(JointNode initialState, List<int[]> groups, List<List<Command[]>> plans, int[] conflict) {
+		int count = initialState.agents.count();
+		int[] groupIndex = new int[count];
+		int[] localIndex = new int[count];
+		int length = 0;
+		for (int g = 0; g < groups.size(); g++) {
+			for (int i = 0; i < groups.get(g).length; i++) {
+				groupIndex[groups.get(g)[i]] = g;
+				localIndex[groups.get(g)[i]] = i;
+			}
+			length = Math.max(length, plans.get(g).size());
+		}
+
+		// Agent that last moved a box into or out of every cell (row * cols + col), -1 for untouched cells.
+		int cols = initialState.level.cols;
+		int[] mover = new int[initialState.level.rows * cols];
+		Arrays.fill(mover, -1);
+
+		LinkedList<Node> plan = new LinkedList<Node>();
+		JointNode state = initialState;
+		for (int t = 0; t < length; t++) {
+			JointNode stepStart = state;
+			for (int agent = 0; agent < count; agent++) {
+				List<Command[]> steps = plans.get(groupIndex[agent]);
+				Command c = t < steps.size() ? steps.get(t)[localIndex[agent]] : Command.NOOP;
+				JointNode next = state.apply(agent, c);
+				if (next == null) {
+					conflict[0] = agent;
+					conflict[1] = this.blocker(state, stepStart, agent, c, mover, groupIndex);
+					return null;
+				}
+				if (c.actionType == Command.Type.Push || c.actionType == Command.Type.Pull) {
+					// A pushed box goes to the entered cell, a pulled one to the agent's cell.
+					mover[this.boxCell(state, agent, c)] = agent;
+					mover[c.actionType == Command.Type.Push ? this.enteredCell(state, agent, c) : state.agentRows[agent] * cols + state.agentCols[agent]] = agent;
+				}
+				state = next;
+			}
+			plan.add(state);
+		}
+		return plan;
+	}
+
+	// The cell (row * cols + col) of the box the agent moves with c, or -1 for moves and NoOp.
+	private int boxCell(JointNode state, int agent, Command c) {
+		int row = state.agentRows[agent];
+		int col = state.agentCols[agent];
+		if (c.actionType == Command.Type.Push) {
+			return (row + Command.dirToRowChange(c.dir1)) * state.level.cols + col + Command.dirToColChange(c.dir1);
+		} else if (c.actionType == Command.Type.Pull) {
+			return (row + Command.dirToRowChange(c.dir2)) * state.level.cols + col + Command.dirToColChange(c.dir2);
+		}
+		return -1;
+	}
+
+	// The cell that has to be free for the agent to perform c: where the box goes for a push, where the agent goes
+	// otherwise. A pulled box ends on the agent's cell, which is free anyway.
+	private int enteredCell(JointNode state, int agent, Command c) {
+		int row = state.agentRows[agent] + Command.dirToRowChange(c.dir1);
+		int col = state.agentCols[agent] + Command.dirToColChange(c.dir1);
+		if (c.actionType == Command.Type.Push) {
+			row += Command.dirToRowChange(c.dir2);
+			col += Command.dirToColChange(c.dir2);
+		}
+		return row * state.level.cols + col;
+	}
+
+	// The agent of another group that keeps the agent from performing c: one standing on the cell the action enters (now
+	// or at the start of the step), or the one that last moved a box into that cell or out of the cell of the box to be
+	// moved. -1 if there is none.
+	private int blocker(JointNode state, JointNode stepStart, int agent, Command c, int[] mover, int[] groupIndex) {
+		if (c.actionType == Command.Type.NoOp) {
+			return -1;
+		}
+		int cols = state.level.cols;
+		int entered = this.enteredCell(state, agent, c);
+		for (int i = 0; i < state.agentRows.length; i++) {
+			if (groupIndex[i] == groupIndex[agent]) {
+				continue;
+			}
+			if (state.agentRows[i] * cols + state.agentCols[i] == entered || stepStart.agentRows[i] * cols + stepStart.agentCols[i] == entered) {
+				return i;
+			}
+		}
+		int box = this.boxCell(state, agent, c);
+		for (int cell : new int[] { entered, box }) {
+			if (cell >= 0 && mover[cell] >= 0 && groupIndex[mover[cell]] != groupIndex[agent]) {
+				return mover[cell];
+			}
+		}
+		return -1;
+	}
+
+	private void merge(List<int[]> groups, List<List<Command[]>> plans, int a, int b) {
+		int[] merged = Arrays.copyOf(groups.get(a), groups.get(a).length + groups.get(b).length);
+		System.arraycopy(groups.get(b), 0, merged, groups.get(a).length, groups.get(b).length);
+		Arrays.sort(merged);
+		groups.set(Math.min(a, b), merged);
+		plans.set(Math.min(a, b), null);
+		groups.remove(Math.max(a, b));
+		plans.remove(Math.max(a, b));
+	}
+
+	private int groupOf(List<int[]> groups, int agent) {
+		for (int g = 0; g < groups.size(); g++) {
+			for (int i : groups.get(g)) {
+				if (i == agent) {
+					return g;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// The other group with an agent closest to the given agent's starting position.
+	private int nearestGroup(JointNode initialState, List<int[]> groups, int agent) {
+		int own = this.groupOf(groups, agent);
+		int nearest = own == 0 ? 1 : 0;
+		int nearestDistance = Integer.MAX_VALUE;
+		for (int g = 0; g < groups.size(); g++) {
+			if (g == own) {
+				continue;
+			}
+			for (int i : groups.get(g)) {
+				int distance = Math.abs(initialState.agentRows[i] - initialState.agentRows[agent]) + Math.abs(initialState.agentCols[i] - initialState.agentCols[agent]);
+				if (distance < nearestDistance) {
+					nearest = g;
+					nearestDistance = distance;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private String describe(JointNode initialState, int[] group) {
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < group.length; i++) {
+			s.append(i > 0 ? "," : "").append(initialState.agents.ids[group[i]]);
+		}
+		return s.append("}").toString();
+	}
+}
@@ -2,17 +2,12 @@ package searchclient;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.LinkedList;
-import java.util.Random;
 
 import searchclient.Command.Type;
 
 public class Node {
-	private static final Random RND = new Random(1);
-
-	public static int MAX_ROW;
-	public static int MAX_COL;
+	public final Level level;
 
 	public int agentRow;
 	public int agentCol;
@@ -23,28 +18,54 @@ public class Node {
 	// Row 2: (2,0) (2,1) (2,2) (2,3) ...
 	// ...
 	// (Start in the top left corner, first go down, then go right)
-	// E.g. this.walls[2] is an array of booleans having size MAX_COL.
-	// this.walls[row][col] is true if there's a wall at (row, col)
+	// E.g. this.boxes[2] is an array of chars having size level.cols.
+	// this.boxes[row][col] is the box at (row, col), or 0 if there is none.
+	// Walls and goals are the same for every node of a level and live in this.level.
 	//
 
-	public boolean[][] walls;
 	public char[][] boxes;
-	public char[][] goals;
 
 	public Node parent;
 	public Command action;
+	// The primitive actions of a macro step, ending with action; null for primitive steps.
+	public Command[] macro;
+
+	// Set when nodes live in a NodeStore: the node's own index once stored, and its parent's index once detached.
+	public int storeIndex = -1;
+	public int parentIndex = -1;
 
 	private int g;
+	// Goals without a matching box; -1 until counted. Children inherit the count and update it as boxes move.
+	private int unsatisfiedGoals = -1;
 	
 	private int _hash = 0;
+	private int _boxHash = 0;
+
+	// An initial state on the given level.
+	public Node(Level level) {
+		this.level = level;
+		this.parent = null;
+		this.g = 0;
+	}
 
 	public Node(Node parent) {
+		this(parent, parent.g() + 1);
+	}
+
+	// For subclasses where not every expansion step costs an action.
+	protected Node(Node parent, int g) {
+		this.level = parent.level;
 		this.parent = parent;
-		if (parent == null) {
-			this.g = 0;
-		} else {
-			this.g = parent.g() + 1;
-		}
+		this.g = g;
+	}
+
+	// A new initial state with this node's agent and boxes on another level, e.g. one with fewer goals.
+	public Node withLevel(Level level) {
+		Node n = new Node(level);
+		n.agentRow = this.agentRow;
+		n.agentCol = this.agentCol;
+		n.boxes = this.boxes;
+		return n;
 	}
 
 	public int g() {
@@ -52,101 +73,193 @@ public class Node {
 	}
 
 	public boolean isInitialState() {
-		return this.parent == null;
+		return this.parent == null && this.parentIndex < 0;
+	}
+
+	// Drops the reference to a stored parent so the parent chain does not stay reachable from the frontier.
+	public void detachParent() {
+		if (this.parent != null && this.parent.storeIndex >= 0) {
+			this.parentIndex = this.parent.storeIndex;
+			this.parent = null;
+		}
 	}
 
 	public boolean isGoalState() {
-		for (int row = 1; row < MAX_ROW - 1; row++) {
-			for (int col = 1; col < MAX_COL - 1; col++) {
-				char g = goals[row][col];
-				char b = Character.toLowerCase(boxes[row][col]);
-				if (g > 0 && b != g) {
-					return false;
+		return this.unsatisfiedGoals() == 0;
+	}
+
+	public int unsatisfiedGoals() {
+		if (this.unsatisfiedGoals < 0) {
+			int count = 0;
+			for (int row = 1; row < this.level.rows - 1; row++) {
+				for (int col = 1; col < this.level.cols - 1; col++) {
+					char g = this.level.goals[row][col];
+					char b = Character.toLowerCase(boxes[row][col]);
+					if (g > 0 && b != g) {
+						count++;
+					}
 				}
 			}
+			this.unsatisfiedGoals = count;
 		}
-		return true;
+		return this.unsatisfiedGoals;
+	}
+
+	// For a child whose boxes start out as a copy of the parent's.
+	protected void inheritGoalCount(Node parent) {
+		this.unsatisfiedGoals = parent.unsatisfiedGoals();
+	}
+
+	// Moves a box within this node's own boxes, keeping the goal count up to date.
+	protected void moveBox(int fromRow, int fromCol, int toRow, int toCol) {
+		char box = this.boxes[fromRow][fromCol];
+		if (this.unsatisfiedGoals >= 0) {
+			char b = Character.toLowerCase(box);
+			if (this.level.goals[fromRow][fromCol] == b) {
+				this.unsatisfiedGoals++;
+			}
+			if (this.level.goals[toRow][toCol] == b) {
+				this.unsatisfiedGoals--;
+			}
+		}
+		this.boxes[fromRow][fromCol] = 0;
+		this.boxes[toRow][toCol] = box;
 	}
 
 	public ArrayList<Node> getExpandedNodes() {
 		ArrayList<Node> expandedNodes = new ArrayList<Node>(Command.EVERY.length);
 		for (Command c : Command.EVERY) {
-			// Determine applicability of action
-			int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
-			int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
-
-			if (c.actionType == Type.Move) {
-				// Check if there's a wall or box on the cell to which the agent is moving
-				if (this.cellIsFree(newAgentRow, newAgentCol)) {
-					Node n = this.ChildNode();
-					n.action = c;
-					n.agentRow = newAgentRow;
-					n.agentCol = newAgentCol;
-					expandedNodes.add(n);
-				}
-			} else if (c.actionType == Type.Push) {
-				// Make sure that there's actually a box to move
-				if (this.boxAt(newAgentRow, newAgentCol)) {
-					int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
-					int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
-					// .. and that new cell of box is free
-					if (this.cellIsFree(newBoxRow, newBoxCol)) {
-						Node n = this.ChildNode();
-						n.action = c;
-						n.agentRow = newAgentRow;
-						n.agentCol = newAgentCol;
-						n.boxes[newBoxRow][newBoxCol] = this.boxes[newAgentRow][newAgentCol];
-						n.boxes[newAgentRow][newAgentCol] = 0;
-						expandedNodes.add(n);
-					}
-				}
-			} else if (c.actionType == Type.Pull) {
-				// Cell is free where agent is going
-				if (this.cellIsFree(newAgentRow, newAgentCol)) {
-					int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
-					int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
-					// .. and there's a box in "dir2" of the agent
-					if (this.boxAt(boxRow, boxCol)) {
-						Node n = this.ChildNode();
-						n.action = c;
-						n.agentRow = newAgentRow;
-						n.agentCol = newAgentCol;
-						n.boxes[this.agentRow][this.agentCol] = this.boxes[boxRow][boxCol];
-						n.boxes[boxRow][boxCol] = 0;
-						expandedNodes.add(n);
-					}
+			Node n = this.apply(c);
+			if (n != null) {
+				if (this.level.macros) {
+					n.followTunnel();
 				}
+				expandedNodes.add(n);
 			}
 		}
-		Collections.shuffle(expandedNodes, RND);
+		this.level.ordering.order(this, expandedNodes);
 		return expandedNodes;
 	}
 
-	private boolean cellIsFree(int row, int col) {
-		return !this.walls[row][col] && this.boxes[row][col] == 0;
+	// The child reached by the primitive action c, or null if c is not applicable here.
+	public Node apply(Command c) {
+		// Determine applicability of action
+		int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
+		int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
+
+		if (c.actionType == Type.Move) {
+			// Check if there's a wall or box on the cell to which the agent is moving
+			if (!this.cellIsFree(newAgentRow, newAgentCol)) {
+				return null;
+			}
+		} else if (c.actionType == Type.Push) {
+			// Make sure that there's actually a box to move
+			if (!this.boxAt(newAgentRow, newAgentCol)) {
+				return null;
+			}
+			int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
+			int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
+			// .. and that new cell of box is free
+			if (!this.cellIsFree(newBoxRow, newBoxCol)) {
+				return null;
+			}
+		} else if (c.actionType == Type.Pull) {
+			// Cell is free where agent is going
+			if (!this.cellIsFree(newAgentRow, newAgentCol)) {
+				return null;
+			}
+			int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
+			int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
+			// .. and there's a box in "dir2" of the agent
+			if (!this.boxAt(boxRow, boxCol)) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+		Node n = this.ChildNode();
+		n.agentRow = this.agentRow;
+		n.agentCol = this.agentCol;
+		n.perform(c);
+		return n;
+	}
+
+	// Applies an applicable action to this node's own (already copied) state.
+	private void perform(Command c) {
+		int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
+		int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
+		if (c.actionType == Type.Push) {
+			int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
+			int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
+			this.moveBox(newAgentRow, newAgentCol, newBoxRow, newBoxCol);
+		} else if (c.actionType == Type.Pull) {
+			int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
+			int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
+			this.moveBox(boxRow, boxCol, this.agentRow, this.agentCol);
+		}
+		this.action = c;
+		this.agentRow = newAgentRow;
+		this.agentCol = newAgentCol;
 	}
 
-	private boolean boxAt(int row, int col) {
+	// Turns this freshly generated node into a macro node by repeating its action through the tunnel it entered.
+	private void followTunnel() {
+		Tunnels tunnels = this.level.tunnels;
+		Command next = tunnels.continuation(this, this.action);
+		while (next != null && (this.macro == null || this.macro.length <= tunnels.size())) {
+			if (this.macro == null) {
+				this.macro = new Command[] { this.action };
+			}
+			this.macro = Arrays.copyOf(this.macro, this.macro.length + 1);
+			this.macro[this.macro.length - 1] = next;
+			this.perform(next);
+			this.g++;
+			next = tunnels.continuation(this, next);
+		}
+	}
+
+	// The primitive steps of a macro node, replayed from its parent.
+	private LinkedList<Node> expandMacro() {
+		LinkedList<Node> steps = new LinkedList<Node>();
+		Node n = this.parent;
+		for (Command c : this.macro) {
+			n = n.apply(c);
+			steps.add(n);
+		}
+		return steps;
+	}
+
+	protected boolean cellIsFree(int row, int col) {
+		return !this.level.walls[row][col] && this.boxes[row][col] == 0;
+	}
+
+	protected boolean boxAt(int row, int col) {
 		return this.boxes[row][col] > 0;
 	}
 
 	private Node ChildNode() {
 		Node copy = new Node(this);
-		copy.walls = this.walls;
-		copy.goals = this.goals;
-		copy.boxes = new char[MAX_ROW][MAX_COL];
-		for (int row = 0; row < MAX_ROW; row++) {
-			//System.arraycopy(this.walls[row], 0, copy.walls[row], 0, MAX_COL);
-			System.arraycopy(this.boxes[row], 0, copy.boxes[row], 0, MAX_COL);
-			//System.arraycopy(this.goals[row], 0, copy.goals[row], 0, MAX_COL);
+		copy.boxes = new char[this.level.rows][this.level.cols];
+		for (int row = 0; row < this.level.rows; row++) {
+			System.arraycopy(this.boxes[row], 0, copy.boxes[row], 0, this.level.cols);
 		}
+		copy.inheritGoalCount(this);
 		return copy;
 	}
 
+	// The line sent to the server for the step leading to this node.
+	public String actionString() {
+		return this.action.toString();
+	}
+
 	public LinkedList<Node> extractPlan() {
 		LinkedList<Node> plan = new LinkedList<Node>();
-		for (Node n = this; !n.isInitialState(); n = n.parent) 
-			plan.addFirst(n);
+		for (Node n = this; !n.isInitialState(); n = n.parent) {
+			if (n.macro == null)
+				plan.addFirst(n);
+			else
+				plan.addAll(0, n.expandMacro());
+		}
 		//Node n = this;
 		//while (!n.isInitialState()) {
 		//	plan.addFirst(n);
@@ -155,6 +268,14 @@ public class Node {
 		return plan;
 	}
 
+	// Hash of the box layout alone; states differing only in agent position share it.
+	public int boxHash() {
+		if (this._boxHash == 0) {
+			this._boxHash = Arrays.deepHashCode(this.boxes);
+		}
+		return this._boxHash;
+	}
+
 	@Override
 	public int hashCode() {
 		if (this._hash == 0) {
@@ -162,9 +283,8 @@ public class Node {
 			int result = 1;
 			result = prime * result + this.agentCol;
 			result = prime * result + this.agentRow;
-			result = prime * result + Arrays.deepHashCode(this.boxes);
-			result = prime * result + Arrays.deepHashCode(this.goals);
-			result = prime * result + Arrays.deepHashCode(this.walls);
+			result = prime * result + this.boxHash();
+			result = prime * result + this.level.hashCode();
 			this._hash = result;
 		}
 		return this._hash;
@@ -183,9 +303,7 @@ public class Node {
 			return false;
 		if (!Arrays.deepEquals(this.boxes, other.boxes))
 			return false;
-		if (!Arrays.deepEquals(this.goals, other.goals))
-			return false;
-		if (!Arrays.deepEquals(this.walls, other.walls))
+		if (!this.level.equals(other.level))
 			return false;
 		return true;
 	}
@@ -193,16 +311,16 @@ public class Node {
 	@Override
 	public String toString() {
 		StringBuilder s = new StringBuilder();
-		for (int row = 0; row < MAX_ROW; row++) {
-			if (!this.walls[row][0]) {
+		for (int row = 0; row < this.level.rows; row++) {
+			if (!this.level.walls[row][0]) {
 				break;
 			}
-			for (int col = 0; col < MAX_COL; col++) {
+			for (int col = 0; col < this.level.cols; col++) {
 				if (this.boxes[row][col] > 0) {
 					s.append(this.boxes[row][col]);
-				} else if (this.goals[row][col] > 0) {
-					s.append(this.goals[row][col]);
-				} else if (this.walls[row][col]) {
+				} else if (this.level.goals[row][col] > 0) {
+					s.append(this.level.goals[row][col]);
+				} else if (this.level.walls[row][col]) {
 					s.append("+");
 				} else if (row == this.agentRow && col == this.agentCol) {
 					s.append("0");
@@ -0,0 +1,196 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+// Explored nodes kept in growable primitive arrays instead of Node objects.
+// A stored node is an index: its parent is another index, its action a Command ordinal, and its state a packed record
+// (agent cell, box count, then one (cell << 8 | letter) entry per box) at offsets[index] in states.
+public class NodeStore {
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private int size;
+	private int[] parents;
+	private byte[] actions;
+	private int[] gs;
+	private int[] offsets;
+	private int[] hashes;
+
+	private int[] states;
+	private int statesSize;
+
+	// Open addressing table of (index + 1), 0 marks an empty slot.
+	private int[] table;
+
+	private int[] scratch = new int[16];
+
+	// Primitive actions of stored macro steps, by index.
+	private final HashMap<Integer, Command[]> macros = new HashMap<Integer, Command[]>();
+
+	public NodeStore() {
+		this.parents = new int[INITIAL_CAPACITY];
+		this.actions = new byte[INITIAL_CAPACITY];
+		this.gs = new int[INITIAL_CAPACITY];
+		this.offsets = new int[INITIAL_CAPACITY];
+		this.hashes = new int[INITIAL_CAPACITY];
+		this.states = new int[INITIAL_CAPACITY * 4];
+		this.table = new int[INITIAL_CAPACITY * 2];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean contains(Node n) {
+		int length = this.pack(n);
+		return this.find(n.hashCode(), length) >= 0;
+	}
+
+	// Adds n (if not already stored) and records its index on the node so that its children can detach from it.
+	public int add(Node n) {
+		int length = this.pack(n);
+		int hash = n.hashCode();
+		int existing = this.find(hash, length);
+		if (existing >= 0) {
+			n.storeIndex = existing;
+			return existing;
+		}
+
+		if (this.size == this.parents.length) {
+			int capacity = this.size * 2;
+			this.parents = Arrays.copyOf(this.parents, capacity);
+			this.actions = Arrays.copyOf(this.actions, capacity);
+			this.gs = Arrays.copyOf(this.gs, capacity);
+			this.offsets = Arrays.copyOf(this.offsets, capacity);
+			this.hashes = Arrays.copyOf(this.hashes, capacity);
+		}
+		if (this.statesSize + length > this.states.length) {
+			this.states = Arrays.copyOf(this.states, Math.max(this.states.length * 2, this.statesSize + length));
+		}
+
+		int index = this.size++;
+		this.parents[index] = n.parent != null ? n.parent.storeIndex : n.parentIndex;
+		this.actions[index] = (byte) (n.action == null ? -1 : n.action.ordinal());
+		this.gs[index] = n.g();
+		this.offsets[index] = this.statesSize;
+		this.hashes[index] = hash;
+		System.arraycopy(this.scratch, 0, this.states, this.statesSize, length);
+		this.statesSize += length;
+		if (n.macro != null) {
+			this.macros.put(index, n.macro);
+		}
+
+		if (this.size * 2 > this.table.length) {
+			this.rehash();
+		} else {
+			this.insert(index);
+		}
+		n.storeIndex = index;
+		return index;
+	}
+
+	public LinkedList<Node> extractPlan(Node leaf) {
+		LinkedList<Integer> indices = new LinkedList<Integer>();
+		for (int i = leaf.parent != null ? leaf.parent.storeIndex : leaf.parentIndex; i >= 0; i = this.parents[i]) {
+			indices.addFirst(i);
+		}
+
+		// Rebuild the chain from the initial state forward, so that every node gets its parent and g back.
+		Node parent = null;
+		for (int index : indices) {
+			Node n = parent == null ? new Node(leaf.level) : new Node(parent);
+			this.unpack(index, n);
+			if (this.actions[index] >= 0) {
+				n.action = Command.EVERY[this.actions[index]];
+			}
+			n.macro = this.macros.get(index);
+			parent = n;
+		}
+		leaf.parent = parent;
+		return leaf.extractPlan();
+	}
+
+	private int pack(Node n) {
+		int length = 2;
+		int cols = n.level.cols;
+		this.scratch[0] = n.agentRow * cols + n.agentCol;
+		for (int row = 1; row < n.level.rows - 1; row++) {
+			for (int col = 1; col < cols - 1; col++) {
+				char b = n.boxes[row][col];
+				if (b > 0) {
+					if (length == this.scratch.length) {
+						this.scratch = Arrays.copyOf(this.scratch, length * 2);
+					}
+					this.scratch[length++] = (row * cols + col) << 8 | b;
+				}
+			}
+		}
+		this.scratch[1] = length - 2;
+		return length;
+	}
+
+	private void unpack(int index, Node n) {
+		int offset = this.offsets[index];
+		int cols = n.level.cols;
+		n.agentRow = this.states[offset] / cols;
+		n.agentCol = this.states[offset] % cols;
+		n.boxes = new char[n.level.rows][cols];
+		int count = this.states[offset + 1];
+		for (int i = 0; i < count; i++) {
+			int entry = this.states[offset + 2 + i];
+			int cell = entry >>> 8;
+			n.boxes[cell / cols][cell % cols] = (char) (entry & 0xFF);
+		}
+	}
+
+	private int find(int hash, int length) {
+		int mask = this.table.length - 1;
+		for (int slot = mix(hash) & mask; this.table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = this.table[slot] - 1;
+			if (this.hashes[index] == hash && this.matches(index, length)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(int index, int length) {
+		int offset = this.offsets[index];
+		int storedLength = (index + 1 < this.size ? this.offsets[index + 1] : this.statesSize) - offset;
+		if (storedLength != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (this.states[offset + i] != this.scratch[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void insert(int index) {
+		int mask = this.table.length - 1;
+		int slot = mix(this.hashes[index]) & mask;
+		while (this.table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.table[slot] = index + 1;
+	}
+
+	private void rehash() {
+		this.table = new int[this.table.length * 2];
+		for (int i = 0; i < this.size; i++) {
+			this.insert(i);
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	public long bytesUsed() {
+		return this.parents.length * (4L + 1 + 4 + 4 + 4) + this.states.length * 4L + this.table.length * 4L;
+	}
+}
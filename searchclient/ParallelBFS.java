@@ -0,0 +1,242 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Breadth-first search one layer at a time. Each layer is split among fork-join workers, which expand their share into
+// their own lists and claim new states in a shared open-addressing table of packed states with compare-and-set, so no
+// locks are taken. The next layer is the concatenation of the lists. A goal found while generating layer d + 1 can only
+// be reached in d + 1 actions, so plans are as short as those of -bfs.
+//
+// The table is only resized between layers. When it fills up during a layer, the remaining children are set aside and
+// deduplicated after the table has grown.
+public class ParallelBFS {
+	private static final int CHUNK = 256;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	private final ForkJoinPool pool;
+	private final int threads;
+
+	private AtomicReferenceArray<int[]> table;
+	private final AtomicInteger size = new AtomicInteger();
+	private int limit;
+
+	private final AtomicReference<Node> goal = new AtomicReference<Node>();
+	private final AtomicInteger generated = new AtomicInteger();
+	private long startTime;
+
+	public ParallelBFS(int threads) {
+		this.threads = threads;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	public SearchResult solve(Node initialState, SearchContext context) {
+		System.err.format("Search starting with strategy %s.\n", this.toString());
+		this.startTime = System.currentTimeMillis();
+		this.table = new AtomicReferenceArray<int[]>(INITIAL_CAPACITY);
+		this.limit = INITIAL_CAPACITY / 2;
+		this.size.set(0);
+		this.goal.set(null);
+		this.generated.set(0);
+		try {
+			if (initialState.isGoalState()) {
+				return new SearchResult(SearchResult.Status.SOLVED, initialState.extractPlan(), initialState, 0, this.searchStatus(0));
+			}
+			this.claim(pack(initialState));
+
+			List<Node> layer = new ArrayList<Node>();
+			layer.add(initialState);
+			int depth = 0;
+			while (!layer.isEmpty()) {
+				if (context.shouldStop() || context.isPastDeadline()) {
+					return this.stopped(context, layer.size());
+				}
+				Layer next = this.pool.invoke(new Expand(layer, 0, layer.size(), context));
+				if (!next.overflow.isEmpty()) {
+					this.grow(this.size.get() + next.overflow.size());
+					for (Node n : next.overflow) {
+						if (this.claim(pack(n))) {
+							if (n.isGoalState()) {
+								this.goal.compareAndSet(null, n);
+							}
+							next.nodes.add(n);
+						}
+					}
+				}
+				depth++;
+				if (this.goal.get() != null) {
+					Node n = this.goal.get();
+					return new SearchResult(SearchResult.Status.SOLVED, n.extractPlan(), n, 0, this.searchStatus(next.nodes.size()));
+				}
+				// Chunks that start after the deadline expand nothing, so a layer cut short may come back empty; only a
+				// layer that was expanded in full proves the level unsolvable.
+				if (context.isPastDeadline()) {
+					return this.stopped(context, layer.size());
+				}
+				// Grow ahead of the next layer, which has roughly as many new states as this one.
+				if (this.size.get() + next.nodes.size() > this.limit) {
+					this.grow(this.size.get() + next.nodes.size());
+				}
+				layer = next.nodes;
+				if (layer.size() >= 1000) {
+					System.err.format("Layer %d: %s\n", depth, this.searchStatus(layer.size()));
+				}
+			}
+			return new SearchResult(SearchResult.Status.UNSOLVABLE, null, null, 0, this.searchStatus(0));
+		} finally {
+			this.pool.shutdown();
+		}
+	}
+
+	private SearchResult stopped(SearchContext context, int frontier) {
+		SearchResult.Status status = context.isCancelled() ? SearchResult.Status.CANCELLED : SearchResult.Status.TIMED_OUT;
+		return new SearchResult(status, null, null, 0, this.searchStatus(frontier));
+	}
+
+	private static class Layer {
+		final List<Node> nodes = new ArrayList<Node>();
+		final List<Node> overflow = new ArrayList<Node>();
+
+		Layer join(Layer other) {
+			this.nodes.addAll(other.nodes);
+			this.overflow.addAll(other.overflow);
+			return this;
+		}
+	}
+
+	private class Expand extends RecursiveTask<Layer> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Node> layer;
+		private final int from;
+		private final int to;
+		private final SearchContext context;
+
+		Expand(List<Node> layer, int from, int to, SearchContext context) {
+			this.layer = layer;
+			this.from = from;
+			this.to = to;
+			this.context = context;
+		}
+
+		@Override
+		protected Layer compute() {
+			if (this.to - this.from > CHUNK) {
+				int middle = (this.from + this.to) >>> 1;
+				Expand left = new Expand(this.layer, this.from, middle, this.context);
+				left.fork();
+				Layer right = new Expand(this.layer, middle, this.to, this.context).compute();
+				return left.join().join(right);
+			}
+			Layer result = new Layer();
+			if (goal.get() != null || this.context.isPastDeadline()) {
+				return result;
+			}
+			int count = 0;
+			for (int i = this.from; i < this.to; i++) {
+				for (Node child : this.layer.get(i).getExpandedNodes()) {
+					count++;
+					if (size.get() >= limit) {
+						result.overflow.add(child);
+					} else if (claim(pack(child))) {
+						if (child.isGoalState()) {
+							goal.compareAndSet(null, child);
+						}
+						result.nodes.add(child);
+					}
+				}
+			}
+			generated.addAndGet(count);
+			return result;
+		}
+	}
+
+	// Inserts a packed state; false if it was already there.
+	private boolean claim(int[] key) {
+		int mask = this.table.length() - 1;
+		for (int slot = mix(Arrays.hashCode(key)) & mask;; slot = (slot + 1) & mask) {
+			int[] existing = this.table.get(slot);
+			if (existing == null) {
+				if (this.table.compareAndSet(slot, null, key)) {
+					this.size.incrementAndGet();
+					return true;
+				}
+				// Lost the race for this slot; see what the winner put there.
+				existing = this.table.get(slot);
+			}
+			if (Arrays.equals(existing, key)) {
+				return false;
+			}
+		}
+	}
+
+	// Only called between layers, while no worker is running.
+	private void grow(int needed) {
+		int capacity = this.table.length();
+		while (needed * 2 > capacity) {
+			capacity *= 2;
+		}
+		if (capacity == this.table.length()) {
+			return;
+		}
+		AtomicReferenceArray<int[]> old = this.table;
+		this.table = new AtomicReferenceArray<int[]>(capacity);
+		this.limit = capacity / 2;
+		int mask = capacity - 1;
+		for (int i = 0; i < old.length(); i++) {
+			int[] key = old.get(i);
+			if (key != null) {
+				int slot = mix(Arrays.hashCode(key)) & mask;
+				while (this.table.get(slot) != null) {
+					slot = (slot + 1) & mask;
+				}
+				this.table.set(slot, key);
+			}
+		}
+	}
+
+	// Agent cell followed by (cell << 8 | letter) for every box in row-major order.
+	private static int[] pack(Node n) {
+		Level level = n.level;
+		int count = 0;
+		for (int row = 1; row < level.rows - 1; row++) {
+			for (int col = 1; col < level.cols - 1; col++) {
+				if (n.boxes[row][col] > 0) {
+					count++;
+				}
+			}
+		}
+		int[] key = new int[count + 1];
+		key[0] = n.agentRow * level.cols + n.agentCol;
+		int i = 1;
+		for (int row = 1; row < level.rows - 1; row++) {
+			for (int col = 1; col < level.cols - 1; col++) {
+				if (n.boxes[row][col] > 0) {
+					key[i++] = (row * level.cols + col) << 8 | n.boxes[row][col];
+				}
+			}
+		}
+		return key;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private String searchStatus(int frontier) {
+		float time = (System.currentTimeMillis() - this.startTime) / 1000f;
+		return String.format("#Explored: %,6d, #Frontier: %,6d, #Generated: %,6d, Time: %3.2f s \t%s", this.size.get() - frontier, frontier, this.generated.get(), time, Memory.stringRep());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Parallel Breadth-first Search (%d threads)", this.threads);
+	}
+}
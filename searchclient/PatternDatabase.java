@@ -0,0 +1,352 @@
+package searchclient;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Exact costs for small subsets of boxes, precomputed by breadth-first search backwards from the goals over an abstract
+// level containing only the walls, the agent and the pattern's boxes. Every action has an inverse action (a Push is
+// undone by a Pull and vice versa), so searching forward from all abstract goal states yields the backward distances.
+// Tables hold one unsigned byte per abstract state and live off-heap in direct buffers, outside GC scanning.
+public class PatternDatabase {
+	public static enum Combination {
+		// Max of all lookups is admissible; the sum is not (patterns share agent moves) but is more informed.
+		MAX, ADD
+	};
+
+	private static final int UNREACHED = 0xFF;
+	private static final int MAX_COST = 0xFE;
+
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	// Returned for states whose abstraction cannot reach its goals; such states are dead ends.
+	public static final int DEAD_END = 1 << 20;
+
+	// Pair patterns are skipped when a letter has so many boxes that evaluating every pair of them costs too much.
+	private static final int MAX_PAIR_INSTANCES = 64;
+
+	private static class Pattern {
+		final char[] letters;
+		final ByteBuffer table;
+
+		Pattern(char[] letters, ByteBuffer table) {
+			this.letters = letters;
+			this.table = table;
+		}
+	}
+
+	private final int rows;
+	private final int cols;
+	private final int[] cellIndex;
+	private final int cells;
+	private final int[][] neighbours;
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+	private final BufferPool buffers;
+	private long bytes;
+
+	public PatternDatabase(Node initialState, long budgetBytes) {
+		this(initialState, budgetBytes, new BufferPool());
+	}
+
+	// Tables are taken from buffers and stay in use until release() or until the pool reclaims them.
+	public PatternDatabase(Node initialState, long budgetBytes, BufferPool buffers) {
+		this.buffers = buffers;
+		Level level = initialState.level;
+		this.rows = level.rows;
+		this.cols = level.cols;
+		// Index the cells the agent can ever reach; everything else is irrelevant to the abstraction.
+		this.cellIndex = new int[this.rows * this.cols];
+		Arrays.fill(this.cellIndex, -1);
+		List<Integer> order = new ArrayList<Integer>();
+		BitBoard reachable = level.floor.fill(initialState.agentRow, initialState.agentCol);
+		for (int row = 0; row < this.rows; row++) {
+			for (int col = 0; col < this.cols; col++) {
+				if (reachable.get(row, col)) {
+					this.cellIndex[row * this.cols + col] = order.size();
+					order.add(row * this.cols + col);
+				}
+			}
+		}
+		this.cells = order.size();
+		this.neighbours = new int[this.cells][Command.Dir.values().length];
+		for (int i = 0; i < this.cells; i++) {
+			int cell = order.get(i);
+			for (Command.Dir d : Command.Dir.values()) {
+				int row = cell / this.cols + Command.dirToRowChange(d);
+				int col = cell % this.cols + Command.dirToColChange(d);
+				this.neighbours[i][d.ordinal()] = level.walls[row][col] ? -1 : this.cellIndex[row * this.cols + col];
+			}
+		}
+
+		// Only letters with as many boxes as goals are used: then every box of the letter has to end on a goal.
+		int[] boxCount = new int[26];
+		int[] goalCount = new int[26];
+		for (int row = 0; row < this.rows; row++) {
+			for (int col = 0; col < this.cols; col++) {
+				if (initialState.boxes[row][col] > 0 && this.cellIndex[row * this.cols + col] >= 0) {
+					boxCount[initialState.boxes[row][col] - 'A']++;
+				}
+				if (level.goals[row][col] > 0) {
+					goalCount[level.goals[row][col] - 'a']++;
+				}
+			}
+		}
+		List<Character> letters = new ArrayList<Character>();
+		for (int i = 0; i < 26; i++) {
+			if (boxCount[i] > 0 && boxCount[i] == goalCount[i]) {
+				letters.add((char) ('A' + i));
+			}
+		}
+
+		long singleSize = (long) this.cells * this.cells;
+		for (char letter : letters) {
+			if (this.bytes + singleSize * 5 > budgetBytes) {
+				break;
+			}
+			this.build(initialState, new char[] { letter });
+		}
+
+		long pairSize = singleSize * this.cells;
+		for (int i = 0; i < letters.size(); i++) {
+			for (int j = i; j < letters.size(); j++) {
+				char a = letters.get(i);
+				char b = letters.get(j);
+				int instances = a == b ? boxCount[a - 'A'] * (boxCount[a - 'A'] - 1) : boxCount[a - 'A'] * boxCount[b - 'A'];
+				if (instances == 0 || instances > MAX_PAIR_INSTANCES) {
+					continue;
+				}
+				// The table stays, the int queue (four bytes per state) is only needed while building.
+				if (this.bytes + pairSize * 5 > budgetBytes) {
+					continue;
+				}
+				this.build(initialState, new char[] { a, b });
+			}
+		}
+	}
+
+	public int countPatterns() {
+		return this.patterns.size();
+	}
+
+	public long bytes() {
+		return this.bytes;
+	}
+
+	// Hands the tables back to the pool; lookups find no patterns after that.
+	public void release() {
+		for (Pattern pattern : this.patterns) {
+			this.buffers.give(pattern.table);
+		}
+		this.patterns.clear();
+		this.bytes = 0;
+	}
+
+	private void build(Node initialState, char[] letters) {
+		int k = letters.length;
+		long size = this.cells;
+		for (int i = 0; i < k; i++) {
+			size *= this.cells;
+		}
+		ByteBuffer table = this.buffers.take((int) size);
+		for (int i = 0; i < size; i++) {
+			table.put(i, (byte) UNREACHED);
+		}
+		ByteBuffer queueBuffer = this.buffers.take((int) size * 4);
+		try {
+			this.search(initialState, letters, table, queueBuffer.asIntBuffer());
+		} finally {
+			this.buffers.give(queueBuffer);
+		}
+		this.patterns.add(new Pattern(letters, table));
+		this.bytes += size;
+	}
+
+	// Breadth-first search from all goal placements of the pattern's boxes, filling in table.
+	private void search(Node initialState, char[] letters, ByteBuffer table, IntBuffer queue) {
+		int k = letters.length;
+
+		// Seed with every placement of the pattern's boxes on distinct goals of their letters, agent anywhere free.
+		List<Integer> goalCells = new ArrayList<Integer>();
+		for (int row = 0; row < this.rows; row++) {
+			for (int col = 0; col < this.cols; col++) {
+				if (initialState.level.goals[row][col] > 0 && this.cellIndex[row * this.cols + col] >= 0) {
+					goalCells.add(this.cellIndex[row * this.cols + col] << 8 | initialState.level.goals[row][col]);
+				}
+			}
+		}
+		int[] boxes = new int[k];
+		int tail = this.seed(table, queue, 0, letters, goalCells, boxes, 0);
+
+		int head = 0;
+		int[] next = new int[k];
+		while (head < tail) {
+			int state = queue.get(head++);
+			int cost = Math.min(table.get(state) & 0xFF, MAX_COST - 1) + 1;
+			int agent = this.decode(state, boxes);
+
+			for (Command.Dir d1 : Command.Dir.values()) {
+				int target = this.neighbours[agent][d1.ordinal()];
+				if (target < 0) {
+					continue;
+				}
+				int pushed = indexOf(boxes, target);
+				if (pushed < 0) {
+					// Move
+					tail = this.visit(table, queue, tail, target, boxes, cost);
+					// Pull any box next to the agent along
+					for (Command.Dir d2 : Command.Dir.values()) {
+						if (d2 == d1) {
+							continue;
+						}
+						int pulled = indexOf(boxes, this.neighbours[agent][d2.ordinal()]);
+						if (pulled >= 0) {
+							System.arraycopy(boxes, 0, next, 0, k);
+							next[pulled] = agent;
+							tail = this.visit(table, queue, tail, target, next, cost);
+						}
+					}
+				} else {
+					// Push
+					for (Command.Dir d2 : Command.Dir.values()) {
+						if (Command.isOpposite(d1, d2)) {
+							continue;
+						}
+						int boxTarget = this.neighbours[target][d2.ordinal()];
+						if (boxTarget >= 0 && indexOf(boxes, boxTarget) < 0) {
+							System.arraycopy(boxes, 0, next, 0, k);
+							next[pushed] = boxTarget;
+							tail = this.visit(table, queue, tail, target, next, cost);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private int seed(ByteBuffer table, IntBuffer queue, int tail, char[] letters, List<Integer> goalCells, int[] boxes, int depth) {
+		if (depth == letters.length) {
+			for (int agent = 0; agent < this.cells; agent++) {
+				if (indexOf(boxes, agent) < 0) {
+					int state = this.encode(agent, boxes);
+					if ((table.get(state) & 0xFF) == UNREACHED) {
+						table.put(state, (byte) 0);
+						queue.put(tail++, state);
+					}
+				}
+			}
+			return tail;
+		}
+		for (int goal : goalCells) {
+			int cell = goal >>> 8;
+			if ((char) (goal & 0xFF) == Character.toLowerCase(letters[depth]) && indexOf(boxes, cell, depth) < 0) {
+				boxes[depth] = cell;
+				tail = this.seed(table, queue, tail, letters, goalCells, boxes, depth + 1);
+			}
+		}
+		return tail;
+	}
+
+	private int visit(ByteBuffer table, IntBuffer queue, int tail, int agent, int[] boxes, int cost) {
+		int state = this.encode(agent, boxes);
+		if ((table.get(state) & 0xFF) == UNREACHED) {
+			table.put(state, (byte) cost);
+			queue.put(tail++, state);
+		}
+		return tail;
+	}
+
+	private int encode(int agent, int[] boxes) {
+		int state = agent;
+		for (int box : boxes) {
+			state = state * this.cells + box;
+		}
+		return state;
+	}
+
+	private int decode(int state, int[] boxes) {
+		for (int i = boxes.length - 1; i >= 0; i--) {
+			boxes[i] = state % this.cells;
+			state /= this.cells;
+		}
+		return state;
+	}
+
+	private static int indexOf(int[] boxes, int cell) {
+		return indexOf(boxes, cell, boxes.length);
+	}
+
+	private static int indexOf(int[] boxes, int cell, int length) {
+		for (int i = 0; i < length; i++) {
+			if (boxes[i] == cell) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int lookup(Node n, Combination combination) {
+		// Cell indices of the boxes of every letter.
+		int[][] boxes = new int[26][];
+		int[] counts = new int[26];
+		for (int row = 1; row < this.rows - 1; row++) {
+			for (int col = 1; col < this.cols - 1; col++) {
+				char b = n.boxes[row][col];
+				if (b > 0 && this.cellIndex[row * this.cols + col] >= 0) {
+					int letter = b - 'A';
+					if (boxes[letter] == null) {
+						boxes[letter] = new int[4];
+					} else if (counts[letter] == boxes[letter].length) {
+						boxes[letter] = Arrays.copyOf(boxes[letter], counts[letter] * 2);
+					}
+					boxes[letter][counts[letter]++] = this.cellIndex[row * this.cols + col];
+				}
+			}
+		}
+		int agent = this.cellIndex[n.agentRow * this.cols + n.agentCol];
+
+		int h = 0;
+		int[] single = new int[1];
+		int[] pair = new int[2];
+		for (Pattern pattern : this.patterns) {
+			int a = pattern.letters[0] - 'A';
+			if (pattern.letters.length == 1) {
+				for (int i = 0; i < counts[a]; i++) {
+					single[0] = boxes[a][i];
+					h = this.combine(combination, h, this.cost(pattern, agent, single));
+				}
+			} else {
+				int b = pattern.letters[1] - 'A';
+				for (int i = 0; i < counts[a]; i++) {
+					for (int j = a == b ? i + 1 : 0; j < counts[b]; j++) {
+						pair[0] = boxes[a][i];
+						pair[1] = boxes[b][j];
+						h = this.combine(combination, h, this.cost(pattern, agent, pair));
+					}
+				}
+			}
+			if (h >= DEAD_END) {
+				return DEAD_END;
+			}
+		}
+		return h;
+	}
+
+	private int cost(Pattern pattern, int agent, int[] instance) {
+		int cost = pattern.table.get(this.encode(agent, instance)) & 0xFF;
+		return cost == UNREACHED ? DEAD_END : cost;
+	}
+
+	private int combine(Combination combination, int h, int cost) {
+		if (cost >= DEAD_END) {
+			return DEAD_END;
+		}
+		return combination == Combination.MAX ? Math.max(h, cost) : h + cost;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d patterns over %d cells, %.2f MB off-heap", this.patterns.size(), this.cells, this.bytes / (1024.0 * 1024.0));
+	}
+}
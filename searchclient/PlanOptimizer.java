@@ -0,0 +1,168 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+// Shortens a finished plan without changing its end state. First every cycle (a state visited twice) is cut out, then
+// a small breadth-first search from every plan state looks for a shorter way to a later plan state, and the plan is
+// spliced whenever one is found. The searches are bounded in depth and in nodes, so this is cheap next to the search
+// that found the plan, but it only finds detours that are local. Once the context stops, the plan is returned as it is.
+public class PlanOptimizer {
+	public static final int DEFAULT_DEPTH = 12;
+	public static final int DEFAULT_NODES = 500;
+
+	private final int maxDepth;
+	private final int maxNodes;
+
+	public PlanOptimizer() {
+		this(DEFAULT_DEPTH, DEFAULT_NODES);
+	}
+
+	public PlanOptimizer(int maxDepth, int maxNodes) {
+		this.maxDepth = maxDepth;
+		this.maxNodes = maxNodes;
+	}
+
+	public LinkedList<Node> optimize(Node initialState, LinkedList<Node> plan, SearchContext context) {
+		// steps.get(k) leads from states.get(k) to states.get(k + 1). Plans from -decompose have a level (goal grid)
+		// per stage, so states are compared as initial states on the level of the whole problem.
+		Level level = initialState.level;
+		List<Node> steps = new ArrayList<Node>(plan);
+		List<Node> states = new ArrayList<Node>(plan.size() + 1);
+		states.add(initialState.withLevel(level));
+		for (Node n : plan) {
+			states.add(n.withLevel(level));
+		}
+
+		this.removeCycles(steps, states);
+		this.shortcut(steps, states, level, context);
+		if (!(initialState instanceof JointNode)) {
+			this.straightenWalks(steps, states, level);
+		}
+		// A shortcut may pass through a state the plan visited before.
+		this.removeCycles(steps, states);
+		return new LinkedList<Node>(steps);
+	}
+
+	private void removeCycles(List<Node> steps, List<Node> states) {
+		HashMap<Node, Integer> last = new HashMap<Node, Integer>();
+		for (int i = 0; i < states.size(); i++) {
+			last.put(states.get(i), i);
+		}
+		List<Node> keptSteps = new ArrayList<Node>();
+		List<Node> keptStates = new ArrayList<Node>();
+		int i = 0;
+		while (true) {
+			// Jump to the last visit of this state; everything in between was a detour.
+			i = last.get(states.get(i));
+			keptStates.add(states.get(i));
+			if (i == steps.size()) {
+				break;
+			}
+			keptSteps.add(steps.get(i));
+			i++;
+		}
+		steps.clear();
+		steps.addAll(keptSteps);
+		states.clear();
+		states.addAll(keptStates);
+	}
+
+	private void shortcut(List<Node> steps, List<Node> states, Level level, SearchContext context) {
+		HashMap<Node, Integer> index = indexStates(states);
+		for (int i = 0; i < steps.size(); i++) {
+			Node target = this.search(states.get(i), i, index, context);
+			if (target == null) {
+				continue;
+			}
+			int j = index.get(target);
+			LinkedList<Node> segment = target.extractPlan();
+			steps.subList(i, j).clear();
+			steps.addAll(i, segment);
+			states.subList(i + 1, j + 1).clear();
+			List<Node> segmentStates = new ArrayList<Node>(segment.size());
+			for (Node n : segment) {
+				segmentStates.add(n.withLevel(level));
+			}
+			states.addAll(i + 1, segmentStates);
+			index = indexStates(states);
+		}
+	}
+
+	// Walks between two box moves are often longer than the shortcut searches reach. Every run of Moves is replaced by a
+	// path from the room graph, if that path is shorter and not blocked by a box.
+	private void straightenWalks(List<Node> steps, List<Node> states, Level level) {
+		int i = 0;
+		while (i < steps.size()) {
+			int j = i;
+			while (j < steps.size() && steps.get(j).action.actionType == Command.Type.Move) {
+				j++;
+			}
+			if (j == i) {
+				i++;
+				continue;
+			}
+			Node from = states.get(i);
+			Node to = states.get(j);
+			Command[] path = level.rooms().path(from.agentRow, from.agentCol, to.agentRow, to.agentCol);
+			if (path != null && path.length < j - i) {
+				List<Node> walk = new ArrayList<Node>(path.length);
+				Node n = from;
+				for (Command c : path) {
+					n = n.apply(c);
+					if (n == null) {
+						break;
+					}
+					walk.add(n);
+				}
+				if (n != null) {
+					steps.subList(i, j).clear();
+					steps.addAll(i, walk);
+					states.subList(i + 1, j + 1).clear();
+					states.addAll(i + 1, walk);
+					j = i + walk.size();
+				}
+			}
+			i = j;
+		}
+	}
+
+	// The node reached from the plan state at position i that saves the most actions over the plan, or null.
+	private Node search(Node root, int i, HashMap<Node, Integer> index, SearchContext context) {
+		ArrayDeque<Node> queue = new ArrayDeque<Node>();
+		HashSet<Node> seen = new HashSet<Node>();
+		queue.add(root);
+		seen.add(root);
+		Node best = null;
+		int bestSaving = 0;
+		int expanded = 0;
+		while (!queue.isEmpty() && expanded < this.maxNodes && !context.shouldStop()) {
+			Node n = queue.poll();
+			expanded++;
+			for (Node child : n.getExpandedNodes()) {
+				if (child.g() > this.maxDepth || !seen.add(child)) {
+					continue;
+				}
+				Integer j = index.get(child);
+				if (j != null && j - i - child.g() > bestSaving) {
+					best = child;
+					bestSaving = j - i - child.g();
+				}
+				queue.add(child);
+			}
+		}
+		return best;
+	}
+
+	private static HashMap<Node, Integer> indexStates(List<Node> states) {
+		HashMap<Node, Integer> index = new HashMap<Node, Integer>();
+		for (int i = 0; i < states.size(); i++) {
+			index.put(states.get(i), i);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,101 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Sends plan steps to the server from a thread of its own, one action at a time, checking every response. Steps can be
+// handed over in segments while the rest of the plan is still being searched for, so the server executes the finished
+// part of a plan while the search goes on. A rejected action or a closed connection stops the transmission and cancels
+// the search context, since nothing planned after it can be executed.
+public class PlanTransmitter {
+	// Marks the end of the plan in the queue.
+	private static final List<Node> END = new ArrayList<Node>();
+
+	private final BufferedReader serverMessages;
+	private final PrintStream serverActions;
+	private final SearchContext context;
+	private final LinkedBlockingQueue<List<Node>> queue = new LinkedBlockingQueue<List<Node>>();
+	private final Thread thread;
+
+	private volatile int sent;
+	private volatile boolean failed;
+
+	public PlanTransmitter(BufferedReader serverMessages, PrintStream serverActions, SearchContext context) {
+		this.serverMessages = serverMessages;
+		this.serverActions = serverActions;
+		this.context = context;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				PlanTransmitter.this.transmit();
+			}
+		}, "plan-transmitter");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public void send(List<Node> segment) {
+		if (!this.failed) {
+			this.queue.add(new ArrayList<Node>(segment));
+		}
+	}
+
+	// Waits until every step handed over has been answered, or the transmission failed. Returns the number of steps
+	// the server accepted.
+	public int finish() throws InterruptedException {
+		this.queue.add(END);
+		this.thread.join();
+		return this.sent;
+	}
+
+	public boolean failed() {
+		return this.failed;
+	}
+
+	public int sent() {
+		return this.sent;
+	}
+
+	private void transmit() {
+		try {
+			while (true) {
+				List<Node> segment = this.queue.take();
+				if (segment == END) {
+					return;
+				}
+				for (Node n : segment) {
+					String act = n.actionString();
+					this.serverActions.println(act);
+					String response = this.serverMessages.readLine();
+					if (response == null) {
+						System.err.println("Server closed the connection.");
+						this.fail();
+						return;
+					}
+					if (response.contains("false")) {
+						System.err.format("Server responsed with %s to the inapplicable action: %s\n", response, act);
+						System.err.format("%s was attempted in \n%s\n", act, n.toString());
+						this.fail();
+						return;
+					}
+					this.sent++;
+				}
+			}
+		} catch (IOException ex) {
+			System.err.println("Lost the connection to the server: " + ex.getMessage());
+			this.fail();
+		} catch (InterruptedException ex) {
+			this.fail();
+		}
+	}
+
+	private void fail() {
+		this.failed = true;
+		this.queue.clear();
+		this.context.cancel();
+	}
+}
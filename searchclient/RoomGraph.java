@@ -0,0 +1,388 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import searchclient.Command.Dir;
+import searchclient.Command.Type;
+
+// Walking distances between cells of a level, ignoring boxes, from a two-level abstraction in the style of HPA*. The
+// level is cut into ROOM_SIZE x ROOM_SIZE blocks and every connected part of a block is a room; within a room all
+// distances are stored. Where two rooms touch, each maximal run of touching cell pairs along the block border is one
+// entrance, represented by the pair in the middle of the run. The abstract graph has a node for each side of every
+// entrance; nodes of the same room are joined by their distance within the room, and the two sides of an entrance by
+// a single step. A query connects both cells to the entrances of their rooms and searches the abstract graph with A*,
+// so the graph takes space linear in the size of the level.
+//
+// Like HPA*, the distances are those of the best path through the entrances: a path that crosses a border away from
+// the middle of a run can be a few moves longer than the true shortest path. Within a room distances are exact, and
+// every path returned is walkable and as long as the distance reported.
+public class RoomGraph {
+	public static final int ROOM_SIZE = 8;
+	public static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+	private final int rows;
+	private final int cols;
+	// Room of every cell (row * cols + col), -1 for walls, and the index of the cell within its room.
+	private final int[] room;
+	private final int[] local;
+	// Per room: its cells, all distances between them (local index i * size + j), and its abstract nodes.
+	private final int[][] roomCells;
+	private final short[][] inner;
+	private final int[][] entrances;
+	// Per abstract node: its cell and the node on the other side of its entrance.
+	private final int[] nodeCell;
+	private final int[] partner;
+	// Query state, per thread since levels and their graphs are shared between searches.
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(RoomGraph.this.nodeCell.length);
+		}
+	};
+
+	public RoomGraph(boolean[][] walls) {
+		this.rows = walls.length;
+		this.cols = walls[0].length;
+		int cells = this.rows * this.cols;
+		this.room = new int[cells];
+		this.local = new int[cells];
+		Arrays.fill(this.room, -1);
+
+		// Rooms: flood fill from every unassigned cell without leaving its block.
+		List<int[]> rooms = new ArrayList<int[]>();
+		int[] queue = new int[ROOM_SIZE * ROOM_SIZE];
+		for (int start = 0; start < cells; start++) {
+			if (walls[start / this.cols][start % this.cols] || this.room[start] >= 0) {
+				continue;
+			}
+			int id = rooms.size();
+			int head = 0;
+			int tail = 0;
+			this.room[start] = id;
+			queue[tail++] = start;
+			while (head < tail) {
+				int cell = queue[head];
+				this.local[cell] = head++;
+				for (int next : this.neighbours(walls, cell)) {
+					if (this.room[next] < 0 && this.block(next) == this.block(start)) {
+						this.room[next] = id;
+						queue[tail++] = next;
+					}
+				}
+			}
+			rooms.add(Arrays.copyOf(queue, tail));
+		}
+		this.roomCells = rooms.toArray(new int[0][]);
+
+		this.inner = new short[this.roomCells.length][];
+		for (int r = 0; r < this.roomCells.length; r++) {
+			this.inner[r] = this.innerDistances(walls, r);
+		}
+
+		// Entrances along the vertical block borders (between columns), then along the horizontal ones.
+		List<Integer> pairs = new ArrayList<Integer>();
+		for (int col = ROOM_SIZE - 1; col + 1 < this.cols; col += ROOM_SIZE) {
+			this.findEntrances(0, col, 1, 0, 0, 1, this.rows, pairs);
+		}
+		for (int row = ROOM_SIZE - 1; row + 1 < this.rows; row += ROOM_SIZE) {
+			this.findEntrances(row, 0, 0, 1, 1, 0, this.cols, pairs);
+		}
+		this.nodeCell = new int[pairs.size()];
+		this.partner = new int[pairs.size()];
+		int[] count = new int[this.roomCells.length];
+		for (int node = 0; node < this.nodeCell.length; node++) {
+			this.nodeCell[node] = pairs.get(node);
+			this.partner[node] = node ^ 1;
+			count[this.room[this.nodeCell[node]]]++;
+		}
+		this.entrances = new int[this.roomCells.length][];
+		for (int r = 0; r < this.roomCells.length; r++) {
+			this.entrances[r] = new int[count[r]];
+			count[r] = 0;
+		}
+		for (int node = 0; node < this.nodeCell.length; node++) {
+			int r = this.room[this.nodeCell[node]];
+			this.entrances[r][count[r]++] = node;
+		}
+	}
+
+	// Walks length cells along a border from (row, col) in steps of (dr, dc); the cell across the border is (cr, cc)
+	// further on. Every run of touching pairs between the same two rooms adds the cells of its middle pair, as
+	// consecutive nodes.
+	private void findEntrances(int row, int col, int dr, int dc, int cr, int cc, int length, List<Integer> pairs) {
+		int runStart = -1;
+		int runRoom = -1;
+		int runOther = -1;
+		for (int i = 0; i <= length; i++) {
+			int a = -1;
+			int b = -1;
+			if (i < length) {
+				a = (row + i * dr) * this.cols + col + i * dc;
+				b = a + cr * this.cols + cc;
+			}
+			boolean open = a >= 0 && this.room[a] >= 0 && this.room[b] >= 0;
+			if (runStart >= 0 && !(open && this.room[a] == runRoom && this.room[b] == runOther)) {
+				int middle = (runStart + i - 1) / 2;
+				int cell = (row + middle * dr) * this.cols + col + middle * dc;
+				pairs.add(cell);
+				pairs.add(cell + cr * this.cols + cc);
+				runStart = -1;
+			}
+			if (open && runStart < 0) {
+				runStart = i;
+				runRoom = this.room[a];
+				runOther = this.room[b];
+			}
+		}
+	}
+
+	private int block(int cell) {
+		return (cell / this.cols / ROOM_SIZE) * this.cols + (cell % this.cols) / ROOM_SIZE;
+	}
+
+	private int[] neighbours(boolean[][] walls, int cell) {
+		int[] result = new int[4];
+		int count = 0;
+		int row = cell / this.cols;
+		int col = cell % this.cols;
+		for (Dir d : Dir.values()) {
+			int r = row + Command.dirToRowChange(d);
+			int c = col + Command.dirToColChange(d);
+			if (r >= 0 && c >= 0 && r < this.rows && c < this.cols && !walls[r][c]) {
+				result[count++] = r * this.cols + c;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	// Breadth-first search from every cell of room r, staying inside the room.
+	private short[] innerDistances(boolean[][] walls, int r) {
+		int[] members = this.roomCells[r];
+		int size = members.length;
+		short[] distances = new short[size * size];
+		int[] queue = new int[size];
+		for (int i = 0; i < size; i++) {
+			short[] row = new short[size];
+			Arrays.fill(row, (short) -1);
+			row[i] = 0;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = members[i];
+			while (head < tail) {
+				int cell = queue[head++];
+				for (int next : this.neighbours(walls, cell)) {
+					if (this.room[next] == r && row[this.local[next]] < 0) {
+						row[this.local[next]] = (short) (row[this.local[cell]] + 1);
+						queue[tail++] = next;
+					}
+				}
+			}
+			System.arraycopy(row, 0, distances, i * size, size);
+		}
+		return distances;
+	}
+
+	private int inner(int r, int a, int b) {
+		return this.inner[r][this.local[a] * this.roomCells[r].length + this.local[b]];
+	}
+
+	private int manhattan(int a, int b) {
+		return Math.abs(a / this.cols - b / this.cols) + Math.abs(a % this.cols - b % this.cols);
+	}
+
+	public int rooms() {
+		return this.roomCells.length;
+	}
+
+	public int entrances() {
+		return this.nodeCell.length / 2;
+	}
+
+	// Number of moves from one cell to the other, or UNREACHABLE (also for walls).
+	public int distance(int fromRow, int fromCol, int toRow, int toCol) {
+		Scratch s = this.search(fromRow * this.cols + fromCol, toRow * this.cols + toCol);
+		return s == null ? UNREACHABLE : s.best;
+	}
+
+	// Moves along the path measured by distance, or null if there is none.
+	public Command[] path(int fromRow, int fromCol, int toRow, int toCol) {
+		int a = fromRow * this.cols + fromCol;
+		int b = toRow * this.cols + toCol;
+		Scratch s = this.search(a, b);
+		if (s == null || s.best == UNREACHABLE) {
+			return null;
+		}
+		// Abstract nodes of the path, from a to b.
+		List<Integer> nodes = new ArrayList<Integer>();
+		for (int node = s.bestNode; node >= 0; node = s.parent[node]) {
+			nodes.add(0, node);
+		}
+		Command[] moves = new Command[s.best];
+		int step = 0;
+		int cell = a;
+		for (int node : nodes) {
+			int next = this.nodeCell[node];
+			if (this.room[next] == this.room[cell]) {
+				step = this.walk(cell, next, moves, step);
+			} else {
+				moves[step++] = this.move(cell, next);
+			}
+			cell = next;
+		}
+		this.walk(cell, b, moves, step);
+		return moves;
+	}
+
+	// Appends the moves from cell a to cell b of the same room, each to a neighbour one closer to b within the room.
+	private int walk(int a, int b, Command[] moves, int step) {
+		int r = this.room[a];
+		int cell = a;
+		while (cell != b) {
+			int remaining = this.inner(r, cell, b);
+			int row = cell / this.cols;
+			int col = cell % this.cols;
+			for (Dir d : Dir.values()) {
+				int nr = row + Command.dirToRowChange(d);
+				int nc = col + Command.dirToColChange(d);
+				int next = nr * this.cols + nc;
+				if (nr >= 0 && nc >= 0 && nr < this.rows && nc < this.cols && this.room[next] == r && this.inner(r, next, b) == remaining - 1) {
+					moves[step++] = Command.get(Type.Move, d, null);
+					cell = next;
+					break;
+				}
+			}
+		}
+		return step;
+	}
+
+	private Command move(int a, int b) {
+		for (Dir d : Dir.values()) {
+			if (a + Command.dirToRowChange(d) * this.cols + Command.dirToColChange(d) == b) {
+				return Command.get(Type.Move, d, null);
+			}
+		}
+		throw new IllegalStateException("Cells " + a + " and " + b + " are not neighbours.");
+	}
+
+	// A* over the abstract graph from cell a to cell b, with Manhattan distance as the estimate. The result stays valid
+	// until the next search of the calling thread; null if either cell is a wall.
+	private Scratch search(int a, int b) {
+		int ra = this.room[a];
+		int rb = this.room[b];
+		if (ra < 0 || rb < 0) {
+			return null;
+		}
+		Scratch s = this.scratch.get();
+		s.reset();
+		s.best = ra == rb ? this.inner(ra, a, b) : UNREACHABLE;
+		s.bestNode = -1;
+		for (int x : this.entrances[ra]) {
+			this.relax(s, x, this.inner(ra, a, this.nodeCell[x]), -1, b, rb);
+		}
+		while (s.size > 0) {
+			long top = s.pop();
+			int node = (int) top;
+			if ((int) (top >>> 32) >= s.best) {
+				break;
+			}
+			if (s.closed[node] == s.generation) {
+				continue;
+			}
+			s.closed[node] = s.generation;
+			int g = s.g[node];
+			int other = this.partner[node];
+			this.relax(s, other, g + 1, node, b, rb);
+			int r = this.room[this.nodeCell[node]];
+			for (int x : this.entrances[r]) {
+				if (x != node) {
+					this.relax(s, x, g + this.inner(r, this.nodeCell[node], this.nodeCell[x]), node, b, rb);
+				}
+			}
+		}
+		return s;
+	}
+
+	private void relax(Scratch s, int node, int g, int parent, int b, int rb) {
+		if (s.closed[node] == s.generation || s.seen[node] == s.generation && s.g[node] <= g) {
+			return;
+		}
+		s.seen[node] = s.generation;
+		s.g[node] = g;
+		s.parent[node] = parent;
+		int cell = this.nodeCell[node];
+		if (this.room[cell] == rb) {
+			int d = g + this.inner(rb, cell, b);
+			if (d < s.best) {
+				s.best = d;
+				s.bestNode = node;
+			}
+		}
+		s.push(g + this.manhattan(cell, b), node);
+	}
+
+	// Per-node search state; a node counts as seen or closed only when stamped with the current generation, so
+	// nothing has to be cleared between searches.
+	private static class Scratch {
+		final int[] g;
+		final int[] parent;
+		final int[] seen;
+		final int[] closed;
+		int generation;
+		// Binary heap of (f << 32 | node).
+		long[] heap = new long[64];
+		int size;
+		int best;
+		int bestNode;
+
+		Scratch(int nodes) {
+			this.g = new int[nodes];
+			this.parent = new int[nodes];
+			this.seen = new int[nodes];
+			this.closed = new int[nodes];
+		}
+
+		void reset() {
+			this.generation++;
+			this.size = 0;
+		}
+
+		void push(int f, int node) {
+			if (this.size == this.heap.length) {
+				this.heap = Arrays.copyOf(this.heap, this.size * 2);
+			}
+			long entry = (long) f << 32 | node;
+			int i = this.size++;
+			while (i > 0 && this.heap[(i - 1) / 2] > entry) {
+				this.heap[i] = this.heap[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			this.heap[i] = entry;
+		}
+
+		long pop() {
+			long top = this.heap[0];
+			long last = this.heap[--this.size];
+			int i = 0;
+			while (2 * i + 1 < this.size) {
+				int child = 2 * i + 1;
+				if (child + 1 < this.size && this.heap[child + 1] < this.heap[child]) {
+					child++;
+				}
+				if (this.heap[child] >= last) {
+					break;
+				}
+				this.heap[i] = this.heap[child];
+				i = child;
+			}
+			this.heap[i] = last;
+			return top;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d rooms, %d entrances", this.rooms(), this.entrances());
+	}
+}
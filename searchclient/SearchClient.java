@@ -1,11 +1,14 @@
 package searchclient;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ArrayList;
 
 import searchclient.Memory;
 import searchclient.Strategy.*;
@@ -14,114 +17,38 @@ import searchclient.Heuristic.*;
 public class SearchClient {
 	public Node initialState;
 
-	public SearchClient(BufferedReader serverMessages) throws Exception {
-		// Read lines specifying colors
-		String line = serverMessages.readLine();
-		if (line.matches("^[a-z]+:\\s*[0-9A-Z](\\s*,\\s*[0-9A-Z])*\\s*$")) {
-			System.err.println("Error, client does not support colors.");
-			System.exit(1);
-		}
-
-		int row = 0;
-		boolean agentFound = false;
-		this.initialState = new Node(null);
-		
-		List<List<Boolean>> wallsList = new ArrayList<List<Boolean>>();
-		List<List<Character>> boxesList = new ArrayList<List<Character>>();
-		List<List<Character>> goalsList = new ArrayList<List<Character>>();
-
-		while (!line.equals("")) {
-			// Add rows
-			ArrayList<Boolean> wallsRow = new ArrayList<Boolean>();
-			ArrayList<Character> boxesRow = new ArrayList<Character>();
-			ArrayList<Character> goalsRow = new ArrayList<Character>();
-			wallsList.add(wallsRow);
-			boxesList.add(boxesRow);
-			goalsList.add(goalsRow);
-			// Add cols
-			for (int col = 0; col < line.length(); col++) {
-				char chr = line.charAt(col);
-
-				if (chr == '+') { // Wall.
-					wallsRow.add(true);
-					boxesRow.add('\0');
-					goalsRow.add('\0');
-				} else if ('0' <= chr && chr <= '9') { // Agent.
-					if (agentFound) {
-						System.err.println("Error, not a single agent level");
-						System.exit(1);
-					}
-					agentFound = true;
-					this.initialState.agentRow = row;
-					this.initialState.agentCol = col;
-					wallsRow.add(false);
-					boxesRow.add('\0');
-					goalsRow.add('\0');
-				} else if ('A' <= chr && chr <= 'Z') { // Box.
-					wallsRow.add(false);
-					boxesRow.add(chr);
-					goalsRow.add('\0');
-				} else if ('a' <= chr && chr <= 'z') { // Goal.
-					wallsRow.add(false);
-					boxesRow.add('\0');
-					goalsRow.add(chr);
-				} else if (chr == ' ') { // Free space.
-					wallsRow.add(false);
-					boxesRow.add('\0');
-					goalsRow.add('\0');
-				} else {
-					System.err.println("Error, read invalid level character: " + (int) chr);
-					System.exit(1);
-				}
-			}
-			line = serverMessages.readLine();
-			row++;
-		}
-		
-		int maxRows = wallsList.size();
-		int maxCols = 0;		
-		
-		for (int i = 0; i < maxRows; i++) {
-			int colSize = wallsList.get(i).size();
-			if (colSize > maxCols) {
-				maxCols = colSize;
-			}
-		}
-		
-		this.initialState.MAX_ROW = maxRows;
-		this.initialState.MAX_COL = maxCols;
-		
-		boolean[][] walls = new boolean[maxRows][maxCols];
-		char[][] boxes = new char[maxRows][maxCols];
-		char[][] goals = new char[maxRows][maxCols];
-		
-		for (int i = 0; i < wallsList.size(); i++) {
-			for (int j = 0; j < wallsList.get(i).size(); j++) {
-				walls[i][j] = wallsList.get(i).get(j);
-			}
-		}
-		
-		for (int i = 0; i < boxesList.size(); i++) {
-			for (int j = 0; j < boxesList.get(i).size(); j++) {
-				boxes[i][j] = boxesList.get(i).get(j);
-			}
-		}
-		
-		for (int i = 0; i < goalsList.size(); i++) {
-			for (int j = 0; j < goalsList.get(i).size(); j++) {
-				goals[i][j] = goalsList.get(i).get(j);
-			}
-		}
-		
-		this.initialState.walls = walls;
-		this.initialState.boxes = boxes;
-		this.initialState.goals = goals;
+	public SearchClient(Node initialState) {
+		this.initialState = initialState;
+	}
+
+	// Reads the level from the start of the server's messages.
+	public SearchClient(InputStream serverMessages) throws IOException {
+		this.initialState = new LevelParser(serverMessages).parse();
+	}
+
+	public SearchResult Search(Strategy strategy) throws IOException {
+		return this.Search(strategy, new SearchContext());
 	}
 
-	public LinkedList<Node> Search(Strategy strategy) throws IOException {
+	public SearchResult Search(Strategy strategy, SearchContext context) throws IOException {
 		System.err.format("Search starting with strategy %s.\n", strategy.toString());
+		strategy.setContext(context);
 		strategy.addToFrontier(this.initialState);
 
+		NodeStore store = strategy.getNodeStore();
+		TraceRecorder trace = context.getTrace();
+		// Best-so-far tracking (and the h of trace records) costs an evaluation per expansion, so it only runs when there
+		// is a deadline to report the best state at, or a trace. It reuses the strategy's heuristic where there is one.
+		Heuristic progress = null;
+		if (context.hasDeadline() || trace != null) {
+			progress = strategy.getHeuristic();
+			if (progress == null && context.hasDeadline()) {
+				progress = new Greedy(this.initialState);
+			}
+		}
+		Node best = null;
+		int bestH = Integer.MAX_VALUE;
+
 		int iterations = 0;
 		while (true) {
             if (iterations == 1000) {
@@ -129,19 +56,43 @@ public class SearchClient {
 				iterations = 0;
 			}
 
+			if (strategy.isStopped()) {
+				SearchResult.Status status = context.isCancelled() ? SearchResult.Status.CANCELLED : SearchResult.Status.TIMED_OUT;
+				return new SearchResult(status, null, best, bestH, strategy.searchStatus());
+			}
+
 			if (strategy.frontierIsEmpty()) {
-				return null;
+				return new SearchResult(SearchResult.Status.UNSOLVABLE, null, best, bestH, strategy.searchStatus());
 			}
 
 			Node leafNode = strategy.getAndRemoveLeaf();
 
 			if (leafNode.isGoalState()) {
-				return leafNode.extractPlan();
+				if (trace != null) {
+					trace.goal(leafNode);
+				}
+				LinkedList<Node> plan = store != null ? store.extractPlan(leafNode) : leafNode.extractPlan();
+				return new SearchResult(SearchResult.Status.SOLVED, plan, leafNode, 0, strategy.searchStatus());
+			}
+
+			int h = -1;
+			if (progress != null) {
+				h = progress.h(leafNode);
+				if (h < bestH) {
+					bestH = h;
+					best = leafNode;
+				}
+			}
+			if (trace != null) {
+				trace.expanded(leafNode, h);
 			}
 
 			strategy.addToExplored(leafNode);
-			for (Node n : leafNode.getExpandedNodes()) { // The list of expanded nodes is shuffled randomly; see Node.java.
+			for (Node n : leafNode.getExpandedNodes()) { // Ordered by the level's SuccessorOrdering.
 				if (!strategy.isExplored(n) && !strategy.inFrontier(n)) {
+					if (store != null) {
+						n.detachParent();
+					}
 					strategy.addToFrontier(n);
 				}
 			}
@@ -149,70 +100,211 @@ public class SearchClient {
 		}
 	}
 
+	public static Strategy createStrategy(String name, Node initialState) {
+		SearchOptions options = new SearchOptions();
+		options.strategy = name;
+		return createStrategy(initialState, options);
+	}
+
+	public static Strategy createStrategy(Node initialState, SearchOptions options) {
+		switch (options.strategy.toLowerCase()) {
+			case "-bfs":
+				return new StrategyBFS();
+			case "-pbfs":
+				// ParallelBFS is not a Strategy; sub-searches (decomposition stages, agent groups) use plain BFS.
+				return new StrategyBFS();
+			case "-dfs":
+				return new StrategyDFS();
+			case "-astar":
+				return new StrategyBestFirst(createHeuristic(initialState, options, 1), options.deferred);
+			case "-peastar":
+				return new StrategyPartialExpansion(createHeuristic(initialState, options, 1));
+			case "-wastar":
+				// You're welcome to test WA* out with different values, but for the report you must at least indicate benchmarks for W = 5.
+				return new StrategyBestFirst(createHeuristic(initialState, options, 5), options.deferred);
+			case "-greedy":
+				return new StrategyBestFirst(createHeuristic(initialState, options, 0), options.deferred);
+			case "-focal":
+				return new StrategyFocal(createHeuristic(initialState, options, 1), options.epsilon);
+			case "-ehc":
+				return new StrategyEnforcedHillClimbing(createHeuristic(initialState, options, 0), 100000);
+			case "-beam":
+				return new StrategyBeam(createHeuristic(initialState, options, 1), options.beamWidth, 8);
+			default:
+				return null;
+		}
+	}
+
+	// W is the weight of h in f: 1 for A*, 0 for greedy evaluation. With -agent, h is h_1.
+	// With a pattern database combination, nodes are evaluated with a PatternDatabaseHeuristic.
+	private static Heuristic createHeuristic(Node initialState, SearchOptions options, int W) {
+		Heuristic heuristic;
+		if (options.pdb != null) {
+			PatternDatabase database = new PatternDatabase(initialState, PatternDatabase.DEFAULT_BUDGET, options.buffers);
+			System.err.println("Pattern database: " + database.toString());
+			heuristic = new PatternDatabaseHeuristic(initialState, database, options.pdb, W);
+		} else if (W == 0) {
+			heuristic = new Greedy(initialState);
+		} else if (W == 1) {
+			heuristic = new AStar(initialState);
+		} else {
+			heuristic = new WeightedAStar(initialState, W);
+		}
+		heuristic.agentTerm = options.agentTerm;
+		return heuristic;
+	}
+
 	public static void main(String[] args) throws Exception {
-		BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in));
+		InputStream serverMessages = new BufferedInputStream(System.in);
 
 		// Use stderr to print to console
 		System.err.println("SearchClient initializing. I am sending this using the error output stream.");
 
+		run(args, serverMessages, System.out, new BufferPool(), new SearchContext());
+	}
+
+	// Reads a level from serverMessages, solves it and sends the plan to serverActions, checking every response.
+	// SolverDaemon calls this once per level, so the same JIT-compiled code and pooled buffers serve many levels, and
+	// cancels the context when its client goes away.
+	// serverMessages must be buffered; the level is read from it byte by byte and the responses after that.
+	public static void run(String[] args, InputStream serverMessages, PrintStream serverActions, BufferPool buffers, SearchContext context) throws Exception {
+		final SearchOptions options = SearchOptions.parse(args);
+		options.buffers = buffers;
+		// The deadline covers reading the level and building tables such as the pattern database, not just the search.
+		if (options.timeout > 0) {
+			context.setTimeout(options.timeout);
+		}
+
 		// Read level and create the initial state of the problem
 		SearchClient client = new SearchClient(serverMessages);
+		if (options.strategy == null || createStrategy(options.strategy, client.initialState) == null) {
+			options.strategy = "-bfs";
+			System.err.println("Defaulting to BFS search. Use arguments -bfs, -pbfs, -dfs, -astar, -peastar, -wastar, -focal <epsilon>, -greedy, -ehc or -beam to set the search strategy.");
+		}
+		if (client.initialState instanceof JointNode && (options.compact || options.decompose || options.pdb != null || options.macros || options.bitstate > 0 || options.order != null)) {
+			// These assume a single agent and uncolored boxes.
+			System.err.println("Ignoring -compact, -decompose, -pdb, -macros, -bitstate and -order on a multi-agent level.");
+			options.compact = false;
+			options.decompose = false;
+			options.pdb = null;
+			options.macros = false;
+			options.bitstate = 0;
+			options.order = null;
+		}
+		if (options.stream && !options.decompose) {
+			System.err.println("Ignoring -stream, only -decompose solves a level in stages that can be sent early.");
+			options.stream = false;
+		}
+		if ((options.compact || options.bitstate > 0) && options.strategy.equalsIgnoreCase("-beam")) {
+			// The beam keeps its own explored sets for a window of recent layers.
+			System.err.println("Ignoring -compact and -bitstate, -beam only remembers its recent layers.");
+			options.compact = false;
+			options.bitstate = 0;
+		}
+		if (options.compact && options.strategy.equalsIgnoreCase("-ehc")) {
+			// The node store cannot be cleared between plateau searches, since the plan is extracted from it; the searches
+			// would prune every state seen before and the complete fallback would no longer be complete.
+			System.err.println("Ignoring -compact, -ehc restarts its search from every new incumbent.");
+			options.compact = false;
+		}
+		if (options.bitstate > 0 && options.compact) {
+			System.err.println("Ignoring -compact, -bitstate replaces the explored set.");
+			options.compact = false;
+		}
+		if (options.order != null) {
+			Level level = client.initialState.level.withOrdering(SuccessorOrdering.named(options.order));
+			client.initialState = client.initialState.withLevel(level);
+			System.err.format("Ordering successors: %s.\n", level.ordering);
+		}
+		if (options.macros) {
+			client.initialState = client.initialState.withLevel(client.initialState.level.withMacros(true));
+			System.err.format("Expanding macros through %d corridor cells.\n", client.initialState.level.tunnels.size());
+		}
+		Strategy.Factory factory = new Strategy.Factory() {
+			@Override
+			public Strategy create(Node initialState) {
+				Strategy strategy = createStrategy(initialState, options);
+				if (options.compact) {
+					strategy.useNodeStore(new NodeStore());
+				} else if (options.bitstate > 0) {
+					strategy.useBitstate(new BitstateTable(options.bitstate * 1024 * 1024));
+				}
+				return strategy;
+			}
+		};
+		Strategy strategy = factory.create(client.initialState);
 
-        Strategy strategy;
-        if (args.length > 0) {
-            switch (args[0].toLowerCase()) {
-                case "-bfs":
-                    strategy = new StrategyBFS();
-                    break;
-                case "-dfs":
-                    strategy = new StrategyDFS();
-                    break;
-                case "-astar":
-                    strategy = new StrategyBestFirst(new AStar(client.initialState));
-                    break;
-                case "-wastar":
-                    // You're welcome to test WA* out with different values, but for the report you must at least indicate benchmarks for W = 5.
-                    strategy = new StrategyBestFirst(new WeightedAStar(client.initialState, 5));
-                    break;
-                case "-greedy":
-                    strategy = new StrategyBestFirst(new Greedy(client.initialState));
-                    break;
-                default:
-                    strategy = new StrategyBFS();
-                    System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or -greedy to set the search strategy.");
-            }
-        } else {
-            strategy = new StrategyBFS();
-            System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or -greedy to set the search strategy.");
-        }
-
-		LinkedList<Node> solution;
+		TraceRecorder trace = null;
+		if (options.trace != null) {
+			trace = new TraceRecorder(Paths.get(options.trace));
+			context.setTrace(trace);
+		}
+		BufferedReader responses = new BufferedReader(new InputStreamReader(serverMessages));
+		final PlanTransmitter transmitter = new PlanTransmitter(responses, serverActions, context);
+		String description = strategy.toString();
+		SearchResult result;
+		// Every action can be undone, so an unsolvable level is recognized on its initial state or not at all.
+		String deadlock = client.initialState instanceof JointNode ? null : new DeadlockDetector(client.initialState.level).deadlock(client.initialState);
 		try {
-			solution = client.Search(strategy);
+			if (deadlock != null) {
+				System.err.println("The level cannot be solved: " + deadlock);
+				result = new SearchResult(SearchResult.Status.UNSOLVABLE, null, client.initialState, 0, "");
+			} else if (client.initialState instanceof JointNode) {
+				result = new MultiAgentPlanner(factory).solve((JointNode) client.initialState, context);
+			} else if (options.decompose) {
+				// The stages build strategies of their own.
+				strategy.release();
+				DecompositionPlanner planner = new DecompositionPlanner(factory);
+				if (options.stream) {
+					planner.setStageListener(new DecompositionPlanner.StageListener() {
+						@Override
+						public void solved(Node stageState, List<Node> segment) {
+							if (options.optimize) {
+								segment = new PlanOptimizer().optimize(stageState, new LinkedList<Node>(segment), context);
+							}
+							transmitter.send(segment);
+						}
+					});
+				}
+				result = planner.solve(client.initialState, context);
+			} else if (options.strategy.equalsIgnoreCase("-pbfs")) {
+				ParallelBFS search = new ParallelBFS(options.threads);
+				description = search.toString();
+				result = search.solve(client.initialState, context);
+			} else {
+				result = client.Search(strategy, context);
+			}
 		} catch (OutOfMemoryError ex) {
 			System.err.println("Maximum memory usage exceeded.");
-			solution = null;
+			result = new SearchResult(SearchResult.Status.OUT_OF_MEMORY, null, null, 0, strategy.searchStatus());
+		} finally {
+			strategy.release();
+			if (trace != null) {
+				context.setTrace(null);
+				trace.close();
+				System.err.format("Trace of %,d records (%,d dropped) written to %s.\n", trace.records(), trace.dropped(), options.trace);
+			}
 		}
 
-		if (solution == null) {
-			System.err.println(strategy.searchStatus());
+		if (!result.isSolved()) {
+			System.err.println(result.toString());
 			System.err.println("Unable to solve level.");
-			System.exit(0);
 		} else {
-			System.err.println("\nSummary for " + strategy.toString());
+			LinkedList<Node> solution = result.plan;
+			System.err.println("\nSummary for " + description);
 			System.err.println("Found solution of length " + solution.size());
-			System.err.println(strategy.searchStatus());
-
-			for (Node n : solution) {
-				String act = n.action.toString();
-				System.out.println(act);
-				String response = serverMessages.readLine();
-				if (response.contains("false")) {
-					System.err.format("Server responsed with %s to the inapplicable action: %s\n", response, act);
-					System.err.format("%s was attempted in \n%s\n", act, n.toString());
-					break;
-				}
+			System.err.println(result.stats);
+			if (options.optimize && !options.stream) {
+				solution = new PlanOptimizer().optimize(client.initialState, solution, context);
+				System.err.println("Optimized solution to length " + solution.size());
+			}
+			if (!options.stream) {
+				transmitter.send(solution);
 			}
 		}
+		int sent = transmitter.finish();
+		if (options.stream) {
+			System.err.format("Streamed %d actions to the server.\n", sent);
+		}
 	}
 }
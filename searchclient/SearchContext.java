@@ -0,0 +1,68 @@
+package searchclient;
+
+public class SearchContext {
+	// The clock is only consulted every CHECK_INTERVAL calls to shouldStop(), keeping the check cheap in hot loops.
+	private static final int CHECK_INTERVAL = 1024;
+
+	private long deadline;
+	private volatile boolean cancelled;
+	private boolean expired;
+	private int ticks;
+	private TraceRecorder trace;
+
+	public SearchContext() {
+		this.deadline = Long.MAX_VALUE;
+	}
+
+	public SearchContext(long timeoutMillis) {
+		this.deadline = System.currentTimeMillis() + timeoutMillis;
+	}
+
+	// Starts the clock for a context created before the timeout was known.
+	public void setTimeout(long timeoutMillis) {
+		this.deadline = System.currentTimeMillis() + timeoutMillis;
+	}
+
+	// Expansions of every search run with this context are recorded into trace, if set.
+	public void setTrace(TraceRecorder trace) {
+		this.trace = trace;
+	}
+
+	public TraceRecorder getTrace() {
+		return this.trace;
+	}
+
+	public boolean hasDeadline() {
+		return this.deadline != Long.MAX_VALUE;
+	}
+
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public boolean isExpired() {
+		return this.expired;
+	}
+
+	// For searches running on several threads: reads the clock on every call and leaves the tick counter alone.
+	public boolean isPastDeadline() {
+		return this.cancelled || System.currentTimeMillis() >= this.deadline;
+	}
+
+	public boolean shouldStop() {
+		if (this.cancelled || this.expired) {
+			return true;
+		}
+		if (++this.ticks == CHECK_INTERVAL) {
+			this.ticks = 0;
+			if (System.currentTimeMillis() >= this.deadline) {
+				this.expired = true;
+			}
+		}
+		return this.expired;
+	}
+}
@@ -0,0 +1,93 @@
+package searchclient;
+
+// Command line settings of the client; everything except the strategy name is optional.
+public class SearchOptions {
+	public String strategy;
+	public long timeout = 0;
+	public boolean compact = false;
+	public boolean decompose = false;
+	public PatternDatabase.Combination pdb = null;
+	public int beamWidth = 1000;
+	// Width of the focal list of -focal: nodes with f up to (1 + epsilon) times the smallest f.
+	public double epsilon = 0.5;
+	public boolean macros = false;
+	public boolean optimize = false;
+	// Estimate with Heuristic.h_1, which adds the agent's walking distance to the boxes still to be moved.
+	public boolean agentTerm = false;
+	// Evaluate -astar, -wastar and -greedy nodes when they are expanded instead of when they are generated.
+	public boolean deferred = false;
+	// Successor ordering by SuccessorOrdering.named; null keeps the level's default (random).
+	public String order = null;
+	// File to record every expansion into, for TraceReader.
+	public String trace = null;
+	// With -decompose: send every stage to the server as soon as it is solved.
+	public boolean stream = false;
+	// Megabytes of the -bitstate explored set; 0 keeps an exact explored set.
+	public long bitstate = 0;
+	// Workers for -pbfs.
+	public int threads = Runtime.getRuntime().availableProcessors();
+	// Not a command line setting: direct buffers shared by the searches of one run (or of many, in SolverDaemon).
+	public BufferPool buffers = new BufferPool();
+
+	public static SearchOptions parse(String[] args) {
+		SearchOptions options = new SearchOptions();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i].toLowerCase()) {
+				case "-timeout":
+					// Seconds; the server's -t is not passed on to the client, so it has to be repeated here.
+					options.timeout = (long) (Double.parseDouble(args[++i]) * 1000);
+					break;
+				case "-compact":
+					options.compact = true;
+					break;
+				case "-decompose":
+					options.decompose = true;
+					break;
+				case "-pdb":
+					options.pdb = PatternDatabase.Combination.valueOf(args[++i].toUpperCase());
+					break;
+				case "-focal":
+					options.strategy = args[i];
+					options.epsilon = Double.parseDouble(args[++i]);
+					// Below 0 the bound falls under the smallest f and the focal list stays empty.
+					if (!(options.epsilon >= 0)) {
+						throw new IllegalArgumentException("The focal search epsilon must be at least 0: " + args[i]);
+					}
+					break;
+				case "-beamwidth":
+					options.beamWidth = Integer.parseInt(args[++i]);
+					break;
+				case "-threads":
+					options.threads = Integer.parseInt(args[++i]);
+					break;
+				case "-bitstate":
+					options.bitstate = Long.parseLong(args[++i]);
+					break;
+				case "-stream":
+					options.stream = true;
+					break;
+				case "-trace":
+					options.trace = args[++i];
+					break;
+				case "-order":
+					options.order = args[++i];
+					break;
+				case "-deferred":
+					options.deferred = true;
+					break;
+				case "-agent":
+					options.agentTerm = true;
+					break;
+				case "-optimize":
+					options.optimize = true;
+					break;
+				case "-macros":
+					options.macros = true;
+					break;
+				default:
+					options.strategy = args[i];
+			}
+		}
+		return options;
+	}
+}
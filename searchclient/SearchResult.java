@@ -0,0 +1,38 @@
+package searchclient;
+
+import java.util.LinkedList;
+
+public class SearchResult {
+	public static enum Status {
+		SOLVED, UNSOLVABLE, TIMED_OUT, CANCELLED, OUT_OF_MEMORY
+	};
+
+	public final Status status;
+	public final LinkedList<Node> plan;
+
+	// Node with the lowest h expanded before the search stopped, or null if nothing was evaluated.
+	public final Node best;
+	public final int bestH;
+
+	public final String stats;
+
+	public SearchResult(Status status, LinkedList<Node> plan, Node best, int bestH, String stats) {
+		this.status = status;
+		this.plan = plan;
+		this.best = best;
+		this.bestH = bestH;
+		this.stats = stats;
+	}
+
+	public boolean isSolved() {
+		return this.status == Status.SOLVED;
+	}
+
+	@Override
+	public String toString() {
+		if (this.best == null) {
+			return String.format("%s: %s", this.status, this.stats);
+		}
+		return String.format("%s (best h: %d at g: %d): %s", this.status, this.bestH, this.best.g(), this.stats);
+	}
+}
@@ -0,0 +1,101 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Resident solver listening on a Unix domain socket. Every connection is one run of the client: DaemonClient sends the
+// client arguments on the first line and then relays the server's messages, and the daemon answers with the actions.
+// The JVM, its JIT-compiled search code and the pooled direct buffers are shared by all levels solved this way.
+// Connections are served one at a time so that every solve gets the whole heap.
+public class SolverDaemon {
+	private static final int PIPE_SIZE = 1 << 16;
+
+	public static Path defaultSocket() {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "searchclient.sock");
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path path = args.length >= 2 && args[0].equals("-socket") ? Paths.get(args[1]) : defaultSocket();
+		// A socket file left behind by a daemon that was killed would make bind fail.
+		Files.deleteIfExists(path);
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(path));
+		path.toFile().deleteOnExit();
+		System.err.format("SolverDaemon listening on %s.\n", path);
+
+		BufferPool buffers = new BufferPool();
+		int solved = 0;
+		while (true) {
+			try (SocketChannel channel = server.accept()) {
+				long start = System.nanoTime();
+				serve(channel, buffers);
+				solved++;
+				System.err.format("Run %d finished in %.3f s, %.2f MB pooled.\n", solved, (System.nanoTime() - start) / 1e9, buffers.bytesPooled() / (1024.0 * 1024.0));
+			} catch (Exception | OutOfMemoryError ex) {
+				// A bad level or a lost client only ends that run.
+				System.err.format("Run failed: %s\n", ex);
+			} finally {
+				buffers.reclaim();
+			}
+		}
+	}
+
+	private static void serve(final SocketChannel channel, BufferPool buffers) throws Exception {
+		final SearchContext context = new SearchContext();
+		final PipedOutputStream received = new PipedOutputStream();
+		InputStream serverMessages = new BufferedInputStream(new PipedInputStream(received, PIPE_SIZE));
+		PrintStream serverActions = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(channel)), true);
+
+		// Reading ahead of the search is what notices a client that went away (the shim never half-closes), so the
+		// search can be cancelled instead of blocking the next connection.
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				ByteBuffer buffer = ByteBuffer.allocate(8192);
+				try {
+					while (channel.read(buffer) >= 0) {
+						received.write(buffer.array(), 0, buffer.position());
+						received.flush();
+						buffer.clear();
+					}
+				} catch (IOException ex) {
+					// Closed by serve once the run is over.
+				}
+				context.cancel();
+				try {
+					received.close();
+				} catch (IOException ex) {
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		String header = LevelParser.readLine(serverMessages);
+		if (header == null) {
+			return;
+		}
+		String[] args = header.isEmpty() ? new String[0] : header.split("\t");
+		System.err.format("Solving with arguments %s.\n", String.join(" ", args));
+		SearchClient.run(args, serverMessages, serverActions, buffers, context);
+		serverActions.flush();
+		channel.shutdownOutput();
+		if (context.isCancelled()) {
+			System.err.println("Client disconnected.");
+		}
+	}
+}
@@ -6,28 +6,110 @@ import searchclient.Memory;
 import searchclient.NotImplementedException;
 
 public abstract class Strategy {
+	// Creates a fresh strategy for each sub-search, e.g. for every stage of a decomposed solve.
+	public static interface Factory {
+		Strategy create(Node initialState);
+	}
+
 	private HashSet<Node> explored;
+	private NodeStore store;
+	private BitstateTable bitstate;
 	private final long startTime;
+	private SearchContext context;
 
 	public Strategy() {
 		this.explored = new HashSet<Node>();
 		this.startTime = System.currentTimeMillis();
+		this.context = new SearchContext();
+	}
+
+	public void setContext(SearchContext context) {
+		this.context = context;
+	}
+
+	public SearchContext getContext() {
+		return this.context;
+	}
+
+	// Cheap enough to call once per expansion; the clock is only read periodically.
+	public boolean isStopped() {
+		return this.context.shouldStop();
+	}
+
+	// The heuristic guiding this strategy, or null for blind strategies.
+	public Heuristic getHeuristic() {
+		return null;
+	}
+
+	// Called once the search with this strategy has returned.
+	public void release() {
+		if (this.getHeuristic() != null) {
+			this.getHeuristic().release();
+		}
+	}
+
+	// Keeps explored nodes in the primitive arrays of the store instead of the explored set.
+	public void useNodeStore(NodeStore store) {
+		this.store = store;
+		this.explored = null;
+	}
+
+	public NodeStore getNodeStore() {
+		return this.store;
+	}
+
+	// Keeps explored nodes as bits in a fixed-size Bloom filter; see BitstateTable for what may be missed.
+	public void useBitstate(BitstateTable bitstate) {
+		this.bitstate = bitstate;
+		this.explored = null;
 	}
 
 	public void addToExplored(Node n) {
-		this.explored.add(n);
+		if (this.store != null) {
+			this.store.add(n);
+		} else if (this.bitstate != null) {
+			this.bitstate.add(n);
+		} else {
+			this.explored.add(n);
+		}
+	}
+
+	// Forgets explored nodes; a node store keeps its nodes, since stored parents may still be needed by the plan.
+	protected void clearExplored() {
+		if (this.explored != null) {
+			this.explored.clear();
+		}
+		if (this.bitstate != null) {
+			this.bitstate.clear();
+		}
 	}
 
 	public boolean isExplored(Node n) {
+		if (this.store != null) {
+			return this.store.contains(n);
+		}
+		if (this.bitstate != null) {
+			return this.bitstate.contains(n);
+		}
 		return this.explored.contains(n);
 	}
 
 	public int countExplored() {
+		if (this.store != null) {
+			return this.store.size();
+		}
+		if (this.bitstate != null) {
+			return this.bitstate.size();
+		}
 		return this.explored.size();
 	}
 
 	public String searchStatus() {
-		return String.format("#Explored: %,6d, #Frontier: %,6d, #Generated: %,6d, Time: %3.2f s \t%s", this.countExplored(), this.countFrontier(), this.countExplored()+this.countFrontier(), this.timeSpent(), Memory.stringRep());
+		String status = String.format("#Explored: %,6d, #Frontier: %,6d, #Generated: %,6d, Time: %3.2f s \t%s", this.countExplored(), this.countFrontier(), this.countExplored()+this.countFrontier(), this.timeSpent(), Memory.stringRep());
+		if (this.bitstate != null) {
+			status += String.format(" [Bitstate FP rate: %.2e]", this.bitstate.falsePositiveRate());
+		}
+		return status;
 	}
 
 	public float timeSpent() {
@@ -47,6 +129,33 @@ public abstract class Strategy {
 	@Override
 	public abstract String toString();
 
+	// A frontier node with the value it is ordered by; not yet evaluated when that value is only a bound taken over from
+	// its parent.
+	protected static class Entry {
+		final Node node;
+		final int f;
+		final boolean evaluated;
+
+		Entry(Node node, int f, boolean evaluated) {
+			this.node = node;
+			this.f = f;
+			this.evaluated = evaluated;
+		}
+
+		// By value, ties broken by the heuristic.
+		static Comparator<Entry> order(final Heuristic h) {
+			return new Comparator<Entry>() {
+				@Override
+				public int compare(Entry e1, Entry e2) {
+					if (e1.f != e2.f) {
+						return Integer.compare(e1.f, e2.f);
+					}
+					return h.tieBreak(e1.node, e2.node);
+				}
+			};
+		}
+	}
+
 	public static class StrategyBFS extends Strategy {
 		private ArrayDeque<Node> frontier;
 		private HashSet<Node> frontierSet;
@@ -91,18 +200,30 @@ public abstract class Strategy {
 		}
 	}
 
+	// Children of an expansion are collected and pushed in reverse, so the first child in SuccessorOrdering is the next
+	// one expanded.
 	public static class StrategyDFS extends Strategy {
 		private Deque<Node> frontier;
 		private HashSet<Node> frontierSet;
+		private ArrayList<Node> children;
 
 		public StrategyDFS() {
 			super();
 			frontier = new ArrayDeque<Node>();
 			frontierSet = new HashSet<Node>();
+			children = new ArrayList<Node>();
+		}
+
+		private void pushChildren() {
+			for (int i = children.size() - 1; i >= 0; i--) {
+				frontier.push(children.get(i));
+			}
+			children.clear();
 		}
 
 		@Override
 		public Node getAndRemoveLeaf() {
+			this.pushChildren();
 			Node n = frontier.pop();
 			frontierSet.remove(n);
 			return n;
@@ -110,18 +231,18 @@ public abstract class Strategy {
 
 		@Override
 		public void addToFrontier(Node n) {
-			frontier.push(n);
+			children.add(n);
 			frontierSet.add(n);
 		}
 
 		@Override
 		public int countFrontier() {
-			return frontier.size();
+			return frontier.size() + children.size();
 		}
 
 		@Override
 		public boolean frontierIsEmpty() {
-			return frontier.isEmpty();
+			return frontier.isEmpty() && children.isEmpty();
 		}
 
 		@Override
@@ -136,49 +257,560 @@ public abstract class Strategy {
 	}
 
 	// Ex 3: Best-first Search uses a priority queue (Java contains no implementation of a Heap data structure)
+	// Nodes are evaluated once, when they enter the frontier. With deferred evaluation children enter with their parent's
+	// value instead and are only evaluated when they come out; one whose value turns out worse goes back in with it. The
+	// heuristic then runs once per expansion (plus re-insertions) rather than once per generated child.
 	public static class StrategyBestFirst extends Strategy {
 		private Heuristic heuristic;
-		private PriorityQueue<Node> frontier;
+		private PriorityQueue<Entry> frontier;
 		private HashSet<Node> frontierSet;
+		private final boolean deferred;
+
+		// Value of the node being expanded, passed on to its children under deferred evaluation.
+		private int leafF;
+		private boolean expanding;
+		private int evaluations;
 
 		public StrategyBestFirst(Heuristic h) {
+			this(h, false);
+		}
+
+		public StrategyBestFirst(Heuristic h, boolean deferred) {
 			super();
 			this.heuristic = h;
-			frontier = new PriorityQueue<Node>(11, h);
+			this.deferred = deferred;
+			frontier = new PriorityQueue<Entry>(11, Entry.order(h));
 			frontierSet = new HashSet<Node>();
 		}
 
+		@Override
+		public Heuristic getHeuristic() {
+			return this.heuristic;
+		}
+
 		@Override
 		public Node getAndRemoveLeaf() {
-			Node n = frontier.poll();
+			Entry e = frontier.poll();
+			while (!e.evaluated) {
+				int f = this.evaluate(e.node);
+				if (f > e.f) {
+					// Worse than the value it was queued with; it may no longer be the best node.
+					frontier.add(new Entry(e.node, f, true));
+					e = frontier.poll();
+				} else {
+					e = new Entry(e.node, f, true);
+				}
+			}
+			frontierSet.remove(e.node);
+			this.leafF = e.f;
+			this.expanding = true;
+			return e.node;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			if (this.deferred && this.expanding) {
+				frontier.add(new Entry(n, this.leafF, false));
+			} else {
+				frontier.add(new Entry(n, this.evaluate(n), true));
+			}
+			frontierSet.add(n);
+		}
+
+		private int evaluate(Node n) {
+			this.evaluations++;
+			return this.heuristic.f(n);
+		}
+
+		@Override
+		public int countFrontier() {
+			return frontier.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			return frontier.isEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return frontierSet.contains(n);
+		}
+
+		@Override
+		public String searchStatus() {
+			if (!this.deferred) {
+				return super.searchStatus();
+			}
+			return super.searchStatus() + String.format(" [Evaluations: %,d]", this.evaluations);
+		}
+
+		@Override
+		public String toString() {
+			return "Best-first Search using " + this.heuristic.toString() + (this.deferred ? " (deferred evaluation)" : "");
+		}
+	}
+
+	// Partial-expansion A*: every node in the open list carries a stored value F, initially its f. Expanding a node only
+	// admits the children with f <= F; the others are dropped and the node goes back into the open list with F set to
+	// the smallest f among them, to be expanded again once the search gets that far. Children that would never be
+	// expanded before the goal are then never stored, at the cost of generating a node's children more than once.
+	public static class StrategyPartialExpansion extends Strategy {
+		private Heuristic heuristic;
+		private PriorityQueue<Entry> frontier;
+		private HashSet<Node> frontierSet;
+
+		// The node being expanded, its stored F and the smallest f of the children it has held back so far.
+		private Node expanding;
+		private int expandingF;
+		private int nextF;
+		private Node leaf;
+		private int leafF;
+		private int deferred;
+
+		public StrategyPartialExpansion(Heuristic h) {
+			super();
+			this.heuristic = h;
+			frontier = new PriorityQueue<Entry>(11, Entry.order(h));
+			frontierSet = new HashSet<Node>();
+		}
+
+		@Override
+		public Heuristic getHeuristic() {
+			return this.heuristic;
+		}
+
+		@Override
+		public void addToExplored(Node n) {
+			super.addToExplored(n);
+			this.reinsert();
+			this.expanding = n;
+			this.expandingF = n == this.leaf ? this.leafF : this.heuristic.f(n);
+			this.nextF = Integer.MAX_VALUE;
+		}
+
+		// Puts the node whose expansion just finished back with the f of its best held back child, if it held any back.
+		private void reinsert() {
+			if (this.expanding != null && this.nextF != Integer.MAX_VALUE) {
+				frontier.add(new Entry(this.expanding, this.nextF, true));
+			}
+			this.expanding = null;
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			this.reinsert();
+			Entry e = frontier.poll();
+			frontierSet.remove(e.node);
+			this.leaf = e.node;
+			this.leafF = e.f;
+			return e.node;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			int f = this.heuristic.f(n);
+			if (this.expanding != null && f > this.expandingF) {
+				this.nextF = Math.min(this.nextF, f);
+				this.deferred++;
+				return;
+			}
+			frontier.add(new Entry(n, f, true));
+			frontierSet.add(n);
+		}
+
+		@Override
+		public int countFrontier() {
+			return frontier.size() + (this.expanding != null && this.nextF != Integer.MAX_VALUE ? 1 : 0);
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			this.reinsert();
+			return frontier.isEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return frontierSet.contains(n);
+		}
+
+		@Override
+		public String searchStatus() {
+			return super.searchStatus() + String.format(" [Held back: %,d]", this.deferred);
+		}
+
+		@Override
+		public String toString() {
+			return "Partial-expansion A* using " + this.heuristic.toString();
+		}
+	}
+
+	// Focal search (A*_epsilon): the open list is ordered by f = g + h, and the nodes with f <= (1 + epsilon) * f_min,
+	// f_min being the smallest f in the open list, also make up the focal list. The node expanded next is the one in the
+	// focal list with the least distance to go, h, ties going to fewer unsatisfied goals and then to lower f; unlike f,
+	// this favours nodes that are far along, so the search dives towards the goal while f_min keeps it close to the open
+	// list's best f. That is no bound on the plan's cost: the heuristics here are not admissible, and Search neither
+	// reopens explored nodes nor lowers the g of frontier nodes, so epsilon only trades plan length for expansions.
+	//
+	// Nodes above the bound wait in buckets by f and join the focal list when f_min has grown enough. An inconsistent h
+	// can lower f_min again; focal nodes that are then above the bound are sent back to wait when they come up.
+	public static class StrategyFocal extends Strategy {
+		private static class FocalEntry {
+			final Node node;
+			final int f;
+			final int d;
+
+			FocalEntry(Node node, int f, int d) {
+				this.node = node;
+				this.f = f;
+				this.d = d;
+			}
+		}
+
+		private Heuristic heuristic;
+		private final double epsilon;
+		private TreeMap<Integer, ArrayList<FocalEntry>> waiting;
+		private PriorityQueue<FocalEntry> focal;
+		// Open nodes per f, waiting or focal, for f_min.
+		private TreeMap<Integer, Integer> counts;
+		private HashSet<Node> frontierSet;
+		private int bound;
+
+		public StrategyFocal(Heuristic h, double epsilon) {
+			super();
+			this.heuristic = h;
+			this.epsilon = epsilon;
+			waiting = new TreeMap<Integer, ArrayList<FocalEntry>>();
+			focal = new PriorityQueue<FocalEntry>(11, new Comparator<FocalEntry>() {
+				@Override
+				public int compare(FocalEntry e1, FocalEntry e2) {
+					if (e1.d != e2.d) {
+						return Integer.compare(e1.d, e2.d);
+					}
+					int goals = e1.node.unsatisfiedGoals() - e2.node.unsatisfiedGoals();
+					if (goals != 0) {
+						return goals;
+					}
+					return Integer.compare(e1.f, e2.f);
+				}
+			});
+			counts = new TreeMap<Integer, Integer>();
+			frontierSet = new HashSet<Node>();
+		}
+
+		@Override
+		public Heuristic getHeuristic() {
+			return this.heuristic;
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			this.bound = (int) Math.floor((1 + this.epsilon) * counts.firstKey());
+			while (!waiting.isEmpty() && waiting.firstKey() <= this.bound) {
+				focal.addAll(waiting.pollFirstEntry().getValue());
+			}
+			FocalEntry e = focal.poll();
+			while (e.f > this.bound) {
+				this.hold(e);
+				e = focal.poll();
+			}
+			int count = counts.get(e.f);
+			if (count == 1) {
+				counts.remove(e.f);
+			} else {
+				counts.put(e.f, count - 1);
+			}
+			frontierSet.remove(e.node);
+			return e.node;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			// The heuristic is an A* evaluation, so f is g + h; h is looked up once, which matters with -pdb.
+			int h = this.heuristic.h(n);
+			FocalEntry e = new FocalEntry(n, n.g() + h, h);
+			Integer count = counts.get(e.f);
+			counts.put(e.f, count == null ? 1 : count + 1);
+			if (e.f <= this.bound) {
+				focal.add(e);
+			} else {
+				this.hold(e);
+			}
+			frontierSet.add(n);
+		}
+
+		private void hold(FocalEntry e) {
+			ArrayList<FocalEntry> bucket = waiting.get(e.f);
+			if (bucket == null) {
+				bucket = new ArrayList<FocalEntry>();
+				waiting.put(e.f, bucket);
+			}
+			bucket.add(e);
+		}
+
+		@Override
+		public int countFrontier() {
+			return frontierSet.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			return frontierSet.isEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return frontierSet.contains(n);
+		}
+
+		@Override
+		public String searchStatus() {
+			return super.searchStatus() + String.format(" [f_min: %d, Focal: %,d]", counts.isEmpty() ? 0 : counts.firstKey(), focal.size());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Focal Search (epsilon %s) using %s", this.epsilon, this.heuristic.toString());
+		}
+	}
+
+	// Enforced hill-climbing: a breadth-first search from the incumbent runs until a node with strictly better h is
+	// generated. That node becomes the new incumbent and the local search structures are thrown away. When a plateau
+	// is exhausted or grows beyond plateauLimit expansions, the search falls back to complete greedy best-first search
+	// from the incumbent.
+	public static class StrategyEnforcedHillClimbing extends Strategy {
+		private Heuristic heuristic;
+		private ArrayDeque<Node> frontier;
+		private HashSet<Node> frontierSet;
+		private final int plateauLimit;
+
+		private int incumbentH = Integer.MAX_VALUE;
+		private Node incumbent;
+		private int plateauExpansions;
+		// Siblings generated after the improving node are not part of the new local search.
+		private boolean committed;
+		private StrategyBestFirst fallback;
+		// Explored nodes forgotten by the restarts, so that the statistics cover the whole search.
+		private int forgotten;
+
+		public StrategyEnforcedHillClimbing(Heuristic h, int plateauLimit) {
+			super();
+			this.heuristic = h;
+			this.plateauLimit = plateauLimit;
+			frontier = new ArrayDeque<Node>();
+			frontierSet = new HashSet<Node>();
+		}
+
+		@Override
+		public Heuristic getHeuristic() {
+			return this.heuristic;
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			if (this.fallback != null) {
+				return this.fallback.getAndRemoveLeaf();
+			}
+			this.committed = false;
+			this.plateauExpansions++;
+			Node n = frontier.pollFirst();
 			frontierSet.remove(n);
 			return n;
 		}
 
 		@Override
 		public void addToFrontier(Node n) {
-			frontier.add(n);
+			if (this.fallback != null) {
+				this.fallback.addToFrontier(n);
+				return;
+			}
+			if (this.committed) {
+				return;
+			}
+			int h = this.heuristic.h(n);
+			if (h < this.incumbentH) {
+				this.incumbentH = h;
+				this.incumbent = n;
+				this.plateauExpansions = 0;
+				frontier.clear();
+				frontierSet.clear();
+				this.clearExplored();
+				this.committed = !n.isInitialState();
+			}
+			frontier.addLast(n);
 			frontierSet.add(n);
 		}
 
+		@Override
+		protected void clearExplored() {
+			this.forgotten += super.countExplored();
+			super.clearExplored();
+		}
+
+		@Override
+		public int countExplored() {
+			return this.forgotten + super.countExplored();
+		}
+
 		@Override
 		public int countFrontier() {
+			if (this.fallback != null) {
+				return this.fallback.countFrontier();
+			}
 			return frontier.size();
 		}
 
 		@Override
 		public boolean frontierIsEmpty() {
-			return frontier.isEmpty();
+			if (this.fallback == null && (frontier.isEmpty() || this.plateauExpansions > this.plateauLimit)) {
+				System.err.format("Plateau at h = %d not escaped, continuing with complete search.\n", this.incumbentH);
+				frontier.clear();
+				frontierSet.clear();
+				this.clearExplored();
+				this.fallback = new StrategyBestFirst(this.heuristic);
+				this.fallback.setContext(this.getContext());
+				this.fallback.addToFrontier(this.incumbent);
+			}
+			if (this.fallback != null) {
+				return this.fallback.frontierIsEmpty();
+			}
+			return false;
 		}
 
 		@Override
 		public boolean inFrontier(Node n) {
+			if (this.fallback != null) {
+				return this.fallback.inFrontier(n);
+			}
 			return frontierSet.contains(n);
 		}
 
 		@Override
 		public String toString() {
-			return "Best-first Search using " + this.heuristic.toString();
+			return "Enforced hill-climbing using " + this.heuristic.toString();
+		}
+	}
+
+	// Beam search: nodes are expanded one layer at a time and only the best width children of a layer, ranked by f,
+	// make it into the next layer. Duplicates are only detected against the last window layers, so memory stays in
+	// O(width * depth) however large the level. When the beam dies out the search restarts with twice the width.
+	public static class StrategyBeam extends Strategy {
+		private static final int MAX_WIDTH = 1 << 20;
+
+		private Heuristic heuristic;
+		private ArrayDeque<Node> layer;
+		private ArrayList<Node> nextLayer;
+		private HashSet<Node> nextLayerSet;
+		private ArrayDeque<HashSet<Node>> window;
+		private final int windowSize;
+		private int width;
+		private Node initialState;
+
+		public StrategyBeam(Heuristic h, int width, int windowSize) {
+			super();
+			this.heuristic = h;
+			this.width = width;
+			this.windowSize = windowSize;
+			layer = new ArrayDeque<Node>();
+			nextLayer = new ArrayList<Node>();
+			nextLayerSet = new HashSet<Node>();
+			window = new ArrayDeque<HashSet<Node>>();
+			window.addFirst(new HashSet<Node>());
+		}
+
+		@Override
+		public Heuristic getHeuristic() {
+			return this.heuristic;
+		}
+
+		@Override
+		public void addToExplored(Node n) {
+			window.peekFirst().add(n);
+		}
+
+		@Override
+		public boolean isExplored(Node n) {
+			for (HashSet<Node> explored : window) {
+				if (explored.contains(n)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int countExplored() {
+			int count = 0;
+			for (HashSet<Node> explored : window) {
+				count += explored.size();
+			}
+			return count;
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			return layer.pollFirst();
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			if (this.initialState == null) {
+				this.initialState = n;
+				layer.addLast(n);
+				return;
+			}
+			nextLayer.add(n);
+			nextLayerSet.add(n);
+		}
+
+		private void advance() {
+			// Rank by f computed once per node rather than once per comparison.
+			long[] keys = new long[nextLayer.size()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = (long) this.heuristic.f(nextLayer.get(i)) << 32 | i;
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < keys.length && i < this.width; i++) {
+				layer.addLast(nextLayer.get((int) keys[i]));
+			}
+			nextLayer.clear();
+			nextLayerSet.clear();
+
+			window.addFirst(new HashSet<Node>());
+			if (window.size() > this.windowSize) {
+				window.removeLast();
+			}
+		}
+
+		@Override
+		public int countFrontier() {
+			return layer.size() + nextLayer.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			if (layer.isEmpty() && !nextLayer.isEmpty()) {
+				this.advance();
+			}
+			if (layer.isEmpty() && this.width < MAX_WIDTH) {
+				this.width *= 2;
+				System.err.format("Beam died out, restarting with width %d.\n", this.width);
+				window.clear();
+				window.addFirst(new HashSet<Node>());
+				layer.addLast(this.initialState);
+			}
+			return layer.isEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return nextLayerSet.contains(n);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Beam search (width %d) using %s", this.width, this.heuristic.toString());
 		}
 	}
 }
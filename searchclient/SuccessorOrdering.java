@@ -0,0 +1,231 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import searchclient.Command.Type;
+
+// The order in which Node.getExpandedNodes hands out the children of a node. Strategies that take children in that order
+// (depth-first search, and best-first search among children with equal values) follow it; the others merely see it as
+// a tie-break. Every Level carries its ordering, so a policy may precompute tables for the level's walls and goals.
+public abstract class SuccessorOrdering {
+	public abstract void order(Node parent, ArrayList<Node> children);
+
+	// The ordering to use on the given level; called once the level is built.
+	protected SuccessorOrdering on(Level level) {
+		return this;
+	}
+
+	public static SuccessorOrdering named(String name) {
+		switch (name.toLowerCase()) {
+			case "random":
+				return new RandomOrdering(1);
+			case "static":
+				return new StaticOrdering();
+			case "goal":
+				return new GoalDirectedOrdering();
+			default:
+				throw new IllegalArgumentException("Unknown successor ordering: " + name);
+		}
+	}
+
+	// Shuffled by a generator seeded from the seed and the parent's state, so the order of a node's children depends on
+	// nothing but the node: runs are repeatable, and the searches of ParallelBFS share the ordering without contending on
+	// a generator or depending on the order their threads get to the nodes.
+	public static class RandomOrdering extends SuccessorOrdering {
+		private final long seed;
+
+		public RandomOrdering(long seed) {
+			this.seed = seed;
+		}
+
+		@Override
+		public void order(Node parent, ArrayList<Node> children) {
+			long state = this.seed ^ parent.hashCode() * 0x9E3779B97F4A7C15L;
+			for (int i = children.size() - 1; i > 0; i--) {
+				state = mix(state);
+				int j = (int) ((state >>> 33) % (i + 1));
+				Collections.swap(children, i, j);
+			}
+		}
+
+		// SplitMix64 step.
+		private static long mix(long state) {
+			long z = state + 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		@Override
+		public String toString() {
+			return "random";
+		}
+	}
+
+	// The order of Command.EVERY.
+	public static class StaticOrdering extends SuccessorOrdering {
+		@Override
+		public void order(Node parent, ArrayList<Node> children) {
+		}
+
+		@Override
+		public String toString() {
+			return "static";
+		}
+	}
+
+	// Children moving a box closer to a goal of its letter come first, then moves bringing the agent closer to a box that
+	// is not on such a goal, then the rest; boxes moved away from their goals come last. Box distances are true walking
+	// distances ignoring boxes, precomputed for every letter; the agent is measured by Manhattan distance.
+	public static class GoalDirectedOrdering extends SuccessorOrdering {
+		private static final int BOX_CLOSER = 0;
+		private static final int AGENT_CLOSER = 1;
+		private static final int BOX_SAME = 2;
+		private static final int AGENT_SAME = 3;
+		private static final int BOX_FARTHER = 4;
+
+		private final Level level;
+		// Distance from every cell to the nearest goal of each letter; null for letters without goals.
+		private final int[][][] distances;
+
+		public GoalDirectedOrdering() {
+			this.level = null;
+			this.distances = null;
+		}
+
+		private GoalDirectedOrdering(Level level) {
+			this.level = level;
+			this.distances = new int[26][][];
+			for (int row = 0; row < level.rows; row++) {
+				for (int col = 0; col < level.cols; col++) {
+					char goal = level.goals[row][col];
+					if (goal >= 'a' && goal <= 'z' && this.distances[goal - 'a'] == null) {
+						this.distances[goal - 'a'] = this.distancesTo(goal);
+					}
+				}
+			}
+		}
+
+		@Override
+		protected SuccessorOrdering on(Level level) {
+			return new GoalDirectedOrdering(level);
+		}
+
+		// Breadth-first search from all goals of the letter at once.
+		private int[][] distancesTo(char goal) {
+			int[][] distance = new int[this.level.rows][this.level.cols];
+			ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+			for (int row = 0; row < this.level.rows; row++) {
+				for (int col = 0; col < this.level.cols; col++) {
+					distance[row][col] = Integer.MAX_VALUE;
+					if (this.level.goals[row][col] == goal) {
+						distance[row][col] = 0;
+						queue.add(row * this.level.cols + col);
+					}
+				}
+			}
+			while (!queue.isEmpty()) {
+				int cell = queue.poll();
+				int r = cell / this.level.cols;
+				int c = cell % this.level.cols;
+				for (Command.Dir d : Command.Dir.values()) {
+					int row = r + Command.dirToRowChange(d);
+					int col = c + Command.dirToColChange(d);
+					if (row >= 0 && col >= 0 && row < this.level.rows && col < this.level.cols && !this.level.walls[row][col] && distance[row][col] == Integer.MAX_VALUE) {
+						distance[row][col] = distance[r][c] + 1;
+						queue.add(row * this.level.cols + col);
+					}
+				}
+			}
+			return distance;
+		}
+
+		@Override
+		public void order(Node parent, ArrayList<Node> children) {
+			int[] targets = null;
+			int[] ranks = new int[children.size()];
+			for (int i = 0; i < children.size(); i++) {
+				Node child = children.get(i);
+				if (child.action.actionType == Type.Move) {
+					if (targets == null) {
+						targets = this.misplacedBoxes(parent);
+					}
+					boolean closer = nearest(targets, child.agentRow, child.agentCol) < nearest(targets, parent.agentRow, parent.agentCol);
+					ranks[i] = closer ? AGENT_CLOSER : AGENT_SAME;
+				} else {
+					ranks[i] = this.rankBoxMove(parent, child);
+				}
+			}
+			// Insertion sort keeps children of equal rank in Command.EVERY order.
+			for (int i = 1; i < ranks.length; i++) {
+				int rank = ranks[i];
+				Node child = children.get(i);
+				int j = i - 1;
+				while (j >= 0 && ranks[j] > rank) {
+					ranks[j + 1] = ranks[j];
+					children.set(j + 1, children.get(j));
+					j--;
+				}
+				ranks[j + 1] = rank;
+				children.set(j + 1, child);
+			}
+		}
+
+		// A macro step starts with its first action and leaves the box where its last action put it.
+		private int rankBoxMove(Node parent, Node child) {
+			Command first = child.macro != null ? child.macro[0] : child.action;
+			Command last = child.action;
+			int fromRow, fromCol, toRow, toCol;
+			if (last.actionType == Type.Push) {
+				fromRow = parent.agentRow + Command.dirToRowChange(first.dir1);
+				fromCol = parent.agentCol + Command.dirToColChange(first.dir1);
+				toRow = child.agentRow + Command.dirToRowChange(last.dir2);
+				toCol = child.agentCol + Command.dirToColChange(last.dir2);
+			} else {
+				fromRow = parent.agentRow + Command.dirToRowChange(first.dir2);
+				fromCol = parent.agentCol + Command.dirToColChange(first.dir2);
+				toRow = child.agentRow - Command.dirToRowChange(last.dir1);
+				toCol = child.agentCol - Command.dirToColChange(last.dir1);
+			}
+			int[][] distance = this.distances[Character.toLowerCase(child.boxes[toRow][toCol]) - 'a'];
+			if (distance == null || distance[toRow][toCol] == distance[fromRow][fromCol]) {
+				return BOX_SAME;
+			}
+			return distance[toRow][toCol] < distance[fromRow][fromCol] ? BOX_CLOSER : BOX_FARTHER;
+		}
+
+		// Cells (row * cols + col) of boxes that have goals of their letter but are not on one.
+		private int[] misplacedBoxes(Node n) {
+			int[] cells = new int[8];
+			int count = 0;
+			for (int row = 1; row < this.level.rows - 1; row++) {
+				for (int col = 1; col < this.level.cols - 1; col++) {
+					char box = n.boxes[row][col];
+					if (box > 0 && this.distances[Character.toLowerCase(box) - 'a'] != null && this.level.goals[row][col] != Character.toLowerCase(box)) {
+						if (count == cells.length) {
+							cells = Arrays.copyOf(cells, count * 2);
+						}
+						cells[count++] = row * this.level.cols + col;
+					}
+				}
+			}
+			return Arrays.copyOf(cells, count);
+		}
+
+		private int nearest(int[] cells, int row, int col) {
+			int nearest = Integer.MAX_VALUE;
+			for (int cell : cells) {
+				nearest = Math.min(nearest, Math.abs(cell / this.level.cols - row) + Math.abs(cell % this.level.cols - col));
+			}
+			return nearest;
+		}
+
+		@Override
+		public String toString() {
+			return "goal-directed";
+		}
+	}
+}
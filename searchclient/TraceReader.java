@@ -0,0 +1,138 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Summarizes a trace written by TraceRecorder:
+//   $ java searchclient.TraceReader trace.bin
+// prints the expansions per f-layer (per g-layer for blind searches), the heuristic error along every plan found (the
+// remaining cost of the plan against h at each of its states), and the box layouts expanded most often.
+public class TraceReader {
+	private static final int HOT_LAYOUTS = 10;
+
+	private static class Record {
+		final int hash;
+		final int parent;
+		final int g;
+		final int h;
+
+		Record(int hash, int parent, int g, int h) {
+			this.hash = hash;
+			this.parent = parent;
+			this.g = g;
+			this.h = h;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: java searchclient.TraceReader <trace file>");
+			System.exit(1);
+		}
+		FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getInt() != TraceRecorder.MAGIC || buffer.getInt() != TraceRecorder.VERSION) {
+			System.err.println(args[0] + " is not a search trace.");
+			System.exit(1);
+		}
+		long count = buffer.getLong();
+		long dropped = buffer.getLong();
+		buffer.position(TraceRecorder.HEADER_SIZE);
+
+		TreeMap<Integer, Integer> layers = new TreeMap<Integer, Integer>();
+		boolean informed = false;
+		HashMap<Integer, Integer> layouts = new HashMap<Integer, Integer>();
+		// Expansions of the current search, by state hash; a goal record ends a search.
+		HashMap<Integer, Record> expanded = new HashMap<Integer, Record>();
+		int plans = 0;
+		long lastNanos = 0;
+
+		for (long i = 0; i < count; i++) {
+			long hashes = buffer.getLong();
+			long layout = buffer.getLong();
+			long info = buffer.getLong();
+			lastNanos = buffer.getLong();
+			Record r = new Record((int) (hashes >>> 32), (int) hashes, (int) layout, (int) (info >> 32));
+			int kind = (int) (info & 0xFFFF);
+
+			if (kind == TraceRecorder.GOAL) {
+				plans++;
+				printError(plans, r, expanded);
+				expanded.clear();
+				continue;
+			}
+			informed |= r.h >= 0;
+			int layer = r.h >= 0 ? r.g + r.h : r.g;
+			Integer n = layers.get(layer);
+			layers.put(layer, n == null ? 1 : n + 1);
+			int box = (int) (layout >>> 32);
+			n = layouts.get(box);
+			layouts.put(box, n == null ? 1 : n + 1);
+			if (!expanded.containsKey(r.hash)) {
+				expanded.put(r.hash, r);
+			}
+		}
+		channel.close();
+
+		System.out.format("%,d expansions in %.2f s, %,d records dropped, %d plan(s) found.\n", count - plans, lastNanos / 1e9, dropped, plans);
+		System.out.format("\nExpansions per %s layer:\n", informed ? "f = g + h" : "g");
+		for (Map.Entry<Integer, Integer> e : layers.entrySet()) {
+			System.out.format("  %6d: %,10d\n", e.getKey(), e.getValue());
+		}
+
+		List<Map.Entry<Integer, Integer>> hot = new ArrayList<Map.Entry<Integer, Integer>>(layouts.entrySet());
+		Collections.sort(hot, new Comparator<Map.Entry<Integer, Integer>>() {
+			@Override
+			public int compare(Map.Entry<Integer, Integer> e1, Map.Entry<Integer, Integer> e2) {
+				return e2.getValue() - e1.getValue();
+			}
+		});
+		System.out.format("\n%,d box layouts, most expanded:\n", layouts.size());
+		for (int i = 0; i < Math.min(HOT_LAYOUTS, hot.size()); i++) {
+			Map.Entry<Integer, Integer> e = hot.get(i);
+			System.out.format("  layout %08x: %,10d expansions (%.1f%%)\n", e.getKey(), e.getValue(), 100.0 * e.getValue() / Math.max(1, count - plans));
+		}
+	}
+
+	// Follows parent hashes back from the goal and compares h with the remaining cost of the plan at every state.
+	private static void printError(int plan, Record goal, HashMap<Integer, Record> expanded) {
+		int states = 0;
+		int informed = 0;
+		long total = 0;
+		int over = 0;
+		int max = Integer.MIN_VALUE;
+		int min = Integer.MAX_VALUE;
+		Record r = expanded.get(goal.parent);
+		while (r != null && states <= expanded.size()) {
+			states++;
+			if (r.h >= 0) {
+				int error = (goal.g - r.g) - r.h;
+				informed++;
+				total += error;
+				max = Math.max(max, error);
+				min = Math.min(min, error);
+				if (error < 0) {
+					over++;
+				}
+			}
+			r = r.parent == 0 ? null : expanded.get(r.parent);
+		}
+		if (informed == 0) {
+			System.out.format("Plan %d: cost %d, %d states traced, no heuristic values recorded.\n", plan, goal.g, states);
+			return;
+		}
+		System.out.format("Plan %d: cost %d, %d states traced. Remaining cost - h: mean %.2f, min %d, max %d; h overestimates at %d states.\n", plan, goal.g, states, (double) total / informed, min, max, over);
+	}
+}
@@ -0,0 +1,162 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Records every expansion of a search into a binary trace file for TraceReader. The search thread only writes a record
+// into a ring buffer and publishes it with an ordered store; a writer thread drains the ring into the file through a
+// memory mapping. Nothing on the search thread blocks or allocates: when the writer falls behind, records are dropped
+// and counted instead.
+//
+// File layout (little-endian): a HEADER_SIZE byte header (MAGIC, VERSION, record count, dropped count, start time in
+// milliseconds), followed by RECORD_SIZE byte records of four longs:
+//   state hash << 32 | parent hash    (parent hash 0 for initial states)
+//   box layout hash << 32 | g
+//   h << 32 | action ordinal << 16 | kind    (h -1 when unknown, action 0xFFFF for initial states)
+//   nanoseconds since the recorder was created
+public class TraceRecorder implements AutoCloseable {
+	public static final int MAGIC = 0x52544353; // "SCTR"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final int RECORD_SIZE = 32;
+
+	public static final int EXPANDED = 0;
+	public static final int GOAL = 1;
+	public static final int NO_ACTION = 0xFFFF;
+
+	private static final int RING_RECORDS = 1 << 16;
+	private static final long MAP_CHUNK = 16L * 1024 * 1024;
+
+	private final long[] ring = new long[RING_RECORDS * 4];
+	// Records published by the search thread and records taken by the writer; both only ever grow.
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private long next;
+	private long cachedTail;
+	private long dropped;
+
+	private final FileChannel channel;
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long written;
+
+	private final long startNanos = System.nanoTime();
+	private final long startMillis = System.currentTimeMillis();
+	private volatile boolean closing;
+	private final Thread writer;
+
+	public TraceRecorder(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.map(HEADER_SIZE);
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TraceRecorder.this.drainUntilClosed();
+			}
+		}, "trace-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public void expanded(Node n, int h) {
+		this.record(n, h, EXPANDED);
+	}
+
+	public void goal(Node n) {
+		this.record(n, -1, GOAL);
+	}
+
+	private void record(Node n, int h, int kind) {
+		long index = this.next;
+		if (index - this.cachedTail >= RING_RECORDS) {
+			this.cachedTail = this.tail.get();
+			if (index - this.cachedTail >= RING_RECORDS) {
+				this.dropped++;
+				return;
+			}
+		}
+		int slot = (int) (index & (RING_RECORDS - 1)) * 4;
+		int parent = n.parent == null ? 0 : n.parent.hashCode();
+		int action = n.action == null ? NO_ACTION : n.action.ordinal();
+		this.ring[slot] = (long) n.hashCode() << 32 | (parent & 0xFFFFFFFFL);
+		this.ring[slot + 1] = (long) n.boxHash() << 32 | (n.g() & 0xFFFFFFFFL);
+		this.ring[slot + 2] = (long) h << 32 | (long) action << 16 | kind;
+		this.ring[slot + 3] = System.nanoTime() - this.startNanos;
+		// Ordered store: the writer sees the slot contents before it sees the new head.
+		this.next = index + 1;
+		this.head.lazySet(this.next);
+	}
+
+	private void drainUntilClosed() {
+		try {
+			while (!this.closing) {
+				if (this.drain() == 0) {
+					LockSupport.parkNanos(1000000);
+				}
+			}
+			this.drain();
+		} catch (IOException ex) {
+			System.err.println("Trace writer failed: " + ex.getMessage());
+		}
+	}
+
+	private int drain() throws IOException {
+		long from = this.tail.get();
+		long to = this.head.get();
+		for (long i = from; i < to; i++) {
+			if (this.region.remaining() < RECORD_SIZE) {
+				this.map(this.regionStart + this.region.position());
+			}
+			int slot = (int) (i & (RING_RECORDS - 1)) * 4;
+			for (int k = 0; k < 4; k++) {
+				this.region.putLong(this.ring[slot + k]);
+			}
+			this.written++;
+		}
+		this.tail.lazySet(to);
+		return (int) (to - from);
+	}
+
+	private void map(long position) throws IOException {
+		this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, position, MAP_CHUNK);
+		this.region.order(ByteOrder.LITTLE_ENDIAN);
+		this.regionStart = position;
+	}
+
+	public long records() {
+		return this.written;
+	}
+
+	public long dropped() {
+		return this.dropped;
+	}
+
+	// Must be called from the search thread, after the last record.
+	@Override
+	public void close() throws IOException {
+		this.closing = true;
+		try {
+			this.writer.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		this.region.force();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putLong(this.written).putLong(this.dropped).putLong(this.startMillis);
+		header.flip();
+		this.channel.write(header, 0);
+		try {
+			this.channel.truncate(HEADER_SIZE + this.written * RECORD_SIZE);
+		} catch (IOException ex) {
+			// Some platforms refuse to shrink a mapped file; readers go by the record count in the header.
+		}
+		this.channel.close();
+	}
+}
@@ -0,0 +1,103 @@
+package searchclient;
+
+import searchclient.Command.Dir;
+import searchclient.Command.Type;
+
+// Corridor cells of a level: non-wall cells with exactly two non-wall neighbours. Inside a corridor the agent has no
+// real choice, so a step into one is continued until it comes out the other end, turning it into a single macro step.
+//
+// Moves follow the corridor around corners, pushes continue while the box can keep going straight and pulls drag the
+// box along until the agent leaves the corridor. A macro stops early when its next step is blocked, when a pushed box
+// reaches a corridor cell it cannot leave straight or the end of the corridor, and when a box ends up on a goal.
+public class Tunnels {
+	private final boolean[][] corridor;
+	private final int size;
+
+	public Tunnels(boolean[][] walls) {
+		int rows = walls.length;
+		int cols = walls[0].length;
+		this.corridor = new boolean[rows][cols];
+		int size = 0;
+		for (int row = 1; row < rows - 1; row++) {
+			for (int col = 1; col < cols - 1; col++) {
+				if (walls[row][col]) {
+					continue;
+				}
+				int open = 0;
+				for (Dir d : Dir.values()) {
+					if (!walls[row + Command.dirToRowChange(d)][col + Command.dirToColChange(d)]) {
+						open++;
+					}
+				}
+				if (open == 2) {
+					this.corridor[row][col] = true;
+					size++;
+				}
+			}
+		}
+		this.size = size;
+	}
+
+	// Number of corridor cells; no macro can be longer than this without going in circles.
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isCorridor(int row, int col) {
+		return this.corridor[row][col];
+	}
+
+	// The direction out of a corridor cell other than the one back where we came from.
+	private Dir exit(Node n, int row, int col, Dir back) {
+		for (Dir d : Dir.values()) {
+			if (d != back && !n.level.walls[row + Command.dirToRowChange(d)][col + Command.dirToColChange(d)]) {
+				return d;
+			}
+		}
+		return null;
+	}
+
+	// The action continuing the macro whose last step was last, or null if the macro ends in n.
+	public Command continuation(Node n, Command last) {
+		int row = n.agentRow;
+		int col = n.agentCol;
+		if (last.actionType == Type.Move) {
+			if (!this.corridor[row][col]) {
+				return null;
+			}
+			Dir d = this.exit(n, row, col, Command.opposite(last.dir1));
+			if (d == null || !n.cellIsFree(row + Command.dirToRowChange(d), col + Command.dirToColChange(d))) {
+				return null;
+			}
+			return Command.get(Type.Move, d, null);
+		} else if (last.actionType == Type.Push) {
+			if (last.dir1 != last.dir2) {
+				return null;
+			}
+			Dir d = last.dir1;
+			int boxRow = row + Command.dirToRowChange(d);
+			int boxCol = col + Command.dirToColChange(d);
+			if (!this.corridor[boxRow][boxCol] || n.level.goals[boxRow][boxCol] > 0) {
+				return null;
+			}
+			if (!n.cellIsFree(boxRow + Command.dirToRowChange(d), boxCol + Command.dirToColChange(d))) {
+				return null;
+			}
+			return last;
+		} else if (last.actionType == Type.Pull) {
+			if (!this.corridor[row][col]) {
+				return null;
+			}
+			Dir back = Command.opposite(last.dir1);
+			if (n.level.goals[row + Command.dirToRowChange(back)][col + Command.dirToColChange(back)] > 0) {
+				return null;
+			}
+			Dir d = this.exit(n, row, col, back);
+			if (d == null || !n.cellIsFree(row + Command.dirToRowChange(d), col + Command.dirToColChange(d))) {
+				return null;
+			}
+			return Command.get(Type.Pull, d, back);
+		}
+		return null;
+	}
+}